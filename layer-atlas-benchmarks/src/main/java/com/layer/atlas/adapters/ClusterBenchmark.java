@@ -0,0 +1,96 @@
+package com.layer.atlas.adapters;
+
+import com.layer.atlas.benchmarks.SyntheticHistory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster computation as AtlasMessagesAdapter.getClusterEntry() performs it, over a 10k Message
+ * history: classifying every position from scratch, and paging in older Messages at the head of
+ * an already-clustered history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClusterBenchmark {
+    // AtlasMessagesAdapter.CLUSTER_TYPE_OFFSET and CLUSTER_DATE_BOUNDARY
+    private static final int CLUSTER_TYPE_OFFSET = 2;
+    private static final byte CLUSTER_DATE_BOUNDARY = 0x10;
+
+    private static final long MILLIS_DAY = 24 * 60 * 60 * 1000L;
+
+    // The query controller's page size when fetching history.
+    private static final int PAGE_SIZE = 50;
+
+    private final TimeZone mTimeZone = TimeZone.getTimeZone("America/Los_Angeles");
+    private final ClusterIndex mIndex = new ClusterIndex();
+    private SyntheticHistory mHistory;
+
+    @Setup
+    public void setUp() {
+        mHistory = SyntheticHistory.generate(10000, 1, 90);
+    }
+
+    @Benchmark
+    public int computeAll() {
+        mIndex.reset(mHistory.size);
+        int checksum = 0;
+        for (int position = 1; position < mHistory.size; position++) {
+            checksum += getEntry(position);
+        }
+        return checksum;
+    }
+
+    /**
+     * Opens a page of unknown entries at the head, then computes only the entries a viewport near
+     * the head needs, as the adapter does when older Messages load above the visible ones.
+     */
+    @Benchmark
+    public int pageInAtHead() {
+        int size = mHistory.size - PAGE_SIZE;
+        mIndex.reset(size);
+        for (int position = 1; position < size; position++) {
+            mIndex.set(position, (byte) CLUSTER_TYPE_OFFSET);
+        }
+        mIndex.insert(0, PAGE_SIZE);
+        mIndex.invalidate(PAGE_SIZE, 1);
+        int checksum = 0;
+        for (int position = 1; position <= PAGE_SIZE + 20; position++) {
+            checksum += getEntry(position);
+        }
+        return checksum;
+    }
+
+    private byte getEntry(int position) {
+        byte entry = mIndex.get(position);
+        if (entry != ClusterIndex.UNKNOWN) return entry;
+        boolean sameSender = mHistory.senders[position - 1] == mHistory.senders[position];
+        entry = (byte) (ClusterType.fromTimes(sameSender, mHistory.sentAt[position - 1], mHistory.sentAt[position]).ordinal() + CLUSTER_TYPE_OFFSET);
+        if (getEpochDay(mHistory.sentAt[position - 1].getTime()) != getEpochDay(mHistory.sentAt[position].getTime())) {
+            entry |= CLUSTER_DATE_BOUNDARY;
+        }
+        mIndex.set(position, entry);
+        return entry;
+    }
+
+    // Stands in for DateLabelFormatter.getEpochDay(), which needs a Context.
+    private long getEpochDay(long millis) {
+        long local = millis + mTimeZone.getOffset(millis);
+        return local >= 0 ? local / MILLIS_DAY : (local - MILLIS_DAY + 1) / MILLIS_DAY;
+    }
+}
@@ -0,0 +1,87 @@
+package com.layer.atlas.adapters;
+
+import com.layer.atlas.benchmarks.SyntheticHistory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receipt computation when a read receipt arrives for my latest Message: ReceiptIndex's range
+ * update against the backwards scan previously run on every change.  Run across history sizes,
+ * the range update should stay flat while the scan grows with the history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReceiptBenchmark implements ReceiptIndex.Source, ReceiptIndex.Callback {
+    @Param({"1000", "10000", "100000"})
+    public int historySize;
+
+    private SyntheticHistory mHistory;
+    private int[] mReceipts;
+    private int mLatestMine;
+    private ReceiptIndex mIndex;
+    private int mReportedRows;
+
+    @Setup
+    public void setUp() {
+        // Half read, so the full scan for the read receipt walks back through half the history.
+        mHistory = SyntheticHistory.generate(historySize, 1, 50);
+        mReceipts = mHistory.receipts.clone();
+        for (int position = mReceipts.length - 1; position >= 0; position--) {
+            if (mHistory.senders[position] == SyntheticHistory.ME) {
+                mLatestMine = position;
+                break;
+            }
+        }
+        mIndex = new ReceiptIndex(this, this);
+        mIndex.reset();
+    }
+
+    @Benchmark
+    public int rangeUpdate() {
+        toggleLatestReceipt();
+        mIndex.onItemRangeChanged(mLatestMine, 1);
+        return mIndex.getReadPosition() + mReportedRows;
+    }
+
+    @Benchmark
+    public int fullScan() {
+        toggleLatestReceipt();
+        mIndex.reset();
+        return mIndex.getReadPosition();
+    }
+
+    private void toggleLatestReceipt() {
+        mReceipts[mLatestMine] = (mReceipts[mLatestMine] == ReceiptIndex.READ) ? ReceiptIndex.DELIVERED : ReceiptIndex.READ;
+    }
+
+    @Override
+    public int getCount() {
+        return mReceipts.length;
+    }
+
+    @Override
+    public int getReceipts(int position) {
+        return mReceipts[position];
+    }
+
+    @Override
+    public void onReceiptRowChanged(int position) {
+        mReportedRows++;
+    }
+}
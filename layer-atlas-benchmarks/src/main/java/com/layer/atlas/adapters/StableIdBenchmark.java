@@ -0,0 +1,49 @@
+package com.layer.atlas.adapters;
+
+import com.layer.atlas.benchmarks.SyntheticHistory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stable ID lookups for every row of a 10k Message history, as RecyclerView requests them while
+ * laying out with stable IDs enabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StableIdBenchmark {
+    private SyntheticHistory mHistory;
+    private StableIdTable<String> mTable;
+
+    @Setup
+    public void setUp() {
+        mHistory = SyntheticHistory.generate(10000, 1, 90);
+        mTable = new StableIdTable<String>();
+        for (String id : mHistory.ids) {
+            mTable.getId(id);
+        }
+    }
+
+    @Benchmark
+    public long lookupAll() {
+        long checksum = 0;
+        for (String id : mHistory.ids) {
+            checksum += mTable.getId(id);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,93 @@
+package com.layer.atlas.benchmarks;
+
+import com.layer.atlas.util.FlatJsonReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image info and location parsing for a 10k Message history load: the previous org.json path in
+ * ThreePartImageCellFactory and LocationCellFactory against FlatJsonReader.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    private static final byte[][] INFO_NAMES = FlatJsonReader.names("orientation", "width", "height");
+    private static final byte[][] LOCATION_NAMES = FlatJsonReader.names("lat", "lon", "label");
+
+    private SyntheticHistory mHistory;
+
+    @Setup
+    public void setUp() {
+        mHistory = SyntheticHistory.generate(10000, 1, 90);
+    }
+
+    @Benchmark
+    public void orgJson(Blackhole blackhole) throws JSONException {
+        for (int i = 0; i < mHistory.size; i++) {
+            if (mHistory.types[i] == SyntheticHistory.TYPE_IMAGE) {
+                JSONObject o = new JSONObject(new String(mHistory.imageInfo[i]));
+                blackhole.consume(o.getInt("orientation"));
+                blackhole.consume(o.getInt("width"));
+                blackhole.consume(o.getInt("height"));
+            } else if (mHistory.types[i] == SyntheticHistory.TYPE_LOCATION) {
+                JSONObject o = new JSONObject(new String(mHistory.locations[i]));
+                blackhole.consume(o.optDouble("lat", 0));
+                blackhole.consume(o.optDouble("lon", 0));
+                blackhole.consume(o.optString("label", null));
+            }
+        }
+    }
+
+    @Benchmark
+    public void flatJsonReader(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < mHistory.size; i++) {
+            if (mHistory.types[i] == SyntheticHistory.TYPE_IMAGE) {
+                FlatJsonReader reader = new FlatJsonReader(mHistory.imageInfo[i]);
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.selectName(INFO_NAMES) == -1) {
+                        reader.skipValue();
+                    } else {
+                        blackhole.consume(reader.nextInt());
+                    }
+                }
+            } else if (mHistory.types[i] == SyntheticHistory.TYPE_LOCATION) {
+                FlatJsonReader reader = new FlatJsonReader(mHistory.locations[i]);
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.selectName(LOCATION_NAMES)) {
+                        case 0:
+                        case 1:
+                            blackhole.consume(reader.nextDouble());
+                            break;
+                        case 2:
+                            blackhole.consume(reader.nextString());
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+            }
+        }
+    }
+}
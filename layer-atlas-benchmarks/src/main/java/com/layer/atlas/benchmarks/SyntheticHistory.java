@@ -0,0 +1,123 @@
+package com.layer.atlas.benchmarks;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * SyntheticHistory generates a reproducible conversation history shaped like a busy driver chat:
+ * a few participants sending in bursts, mostly short text with some long pasted logs and
+ * non-ASCII text, and a share of image and location Messages.  Arrays are indexed by position,
+ * oldest first, mirroring the query controller's ordering.
+ */
+public final class SyntheticHistory {
+    public static final int TYPE_TEXT = 0;
+    public static final int TYPE_IMAGE = 1;
+    public static final int TYPE_LOCATION = 2;
+
+    public static final int ME = 0;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] NAMES = {
+            "Dana Whitfield", "Marco  Ruiz", "Priya", "Jean-Luc Émile Bernard", "Ørjan Lie", "Kwame Mensah"
+    };
+
+    private static final String[] WORDS = {
+            "load", "pickup", "delivered", "ETA", "traffic", "on", "my", "way", "dock", "7", "signed",
+            "BOL", "thanks", "ok", "👍", "café", "route", "détour", "fuel", "stop", "https://example.com/track/8841"
+    };
+
+    public final int size;
+    public final String[] ids;
+    public final int[] senders;
+    public final Date[] sentAt;
+    public final int[] types;
+    public final String[] texts;
+    public final byte[][] textBytes;
+    public final byte[][] imageInfo;
+    public final byte[][] locations;
+    public final int[][] imageDimensions;
+    public final int[] receipts;
+    public final String[] senderNames;
+
+    private SyntheticHistory(int size) {
+        this.size = size;
+        ids = new String[size];
+        senders = new int[size];
+        sentAt = new Date[size];
+        types = new int[size];
+        texts = new String[size];
+        textBytes = new byte[size][];
+        imageInfo = new byte[size][];
+        locations = new byte[size][];
+        imageDimensions = new int[size][];
+        receipts = new int[size];
+        senderNames = NAMES.clone();
+    }
+
+    /**
+     * Generates `size` Messages from the given seed.
+     *
+     * @param size           Number of Messages.
+     * @param seed           Random seed; equal seeds generate equal histories.
+     * @param readPercentage Leading percentage of the history in which my Messages have been
+     *                       read; my later Messages are only delivered.
+     */
+    public static SyntheticHistory generate(int size, long seed, int readPercentage) {
+        Random random = new Random(seed);
+        SyntheticHistory history = new SyntheticHistory(size);
+        long time = 1450000000000L;
+        int sender = ME;
+        int readUpTo = size * readPercentage / 100;
+        for (int i = 0; i < size; i++) {
+            history.ids[i] = "layer:///messages/" + Long.toHexString(seed) + "-" + i;
+
+            // Bursts: usually the same sender, seconds apart; sometimes a new sender, or a long gap.
+            int roll = random.nextInt(100);
+            if (roll < 30) sender = random.nextInt(NAMES.length);
+            if (roll < 5) {
+                time += 2 * 60 * 60 * 1000L + random.nextInt(12 * 60 * 60 * 1000);
+            } else if (roll < 25) {
+                time += 60 * 1000L + random.nextInt(30 * 60 * 1000);
+            } else {
+                time += 1000L + random.nextInt(50 * 1000);
+            }
+            history.senders[i] = sender;
+            history.sentAt[i] = new Date(time);
+
+            int type = random.nextInt(100);
+            if (type < 85) {
+                history.types[i] = TYPE_TEXT;
+                String text = text(random, type < 2 ? 20000 + random.nextInt(20000) : 1 + random.nextInt(24));
+                history.texts[i] = text;
+                history.textBytes[i] = text.getBytes(UTF_8);
+            } else if (type < 95) {
+                history.types[i] = TYPE_IMAGE;
+                int width = 480 + random.nextInt(3600);
+                int height = 480 + random.nextInt(3600);
+                history.imageDimensions[i] = new int[]{width, height};
+                history.imageInfo[i] = ("{\"orientation\":" + random.nextInt(4) + ",\"width\":" + width + ",\"height\":" + height + "}").getBytes(UTF_8);
+            } else {
+                history.types[i] = TYPE_LOCATION;
+                double lat = 25 + random.nextDouble() * 24;
+                double lon = -124 + random.nextDouble() * 57;
+                history.locations[i] = ("{\"lat\":" + lat + ",\"lon\":" + lon + ",\"label\":\"Stop " + i + "\"}").getBytes(UTF_8);
+            }
+
+            if (sender == ME) {
+                history.receipts[i] = (i < readUpTo) ? 1 : 2; // ReceiptIndex.READ : DELIVERED
+            }
+        }
+        return history;
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder b = new StringBuilder(words * 6);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) b.append(i % 12 == 0 ? '\n' : ' ');
+            b.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.layer.atlas.benchmarks;
+
+import com.layer.atlas.messagetypes.ContentSize;
+import com.layer.atlas.util.Utf8StreamDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text part decoding and parsed content sizing over a 10k Message history that includes long
+ * pasted logs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextBenchmark {
+    // TextCellFactory.DEFAULT_PREVIEW_LENGTH
+    private static final int PREVIEW_LENGTH = 4096;
+
+    private SyntheticHistory mHistory;
+
+    @Setup
+    public void setUp() {
+        mHistory = SyntheticHistory.generate(10000, 1, 90);
+    }
+
+    /**
+     * The previous decoding: copy the whole part, then decode it all.
+     */
+    @Benchmark
+    public void decodeWholePart(Blackhole blackhole) {
+        for (byte[] bytes : mHistory.textBytes) {
+            if (bytes != null) blackhole.consume(new String(bytes.clone()));
+        }
+    }
+
+    @Benchmark
+    public void decodePreviewStream(Blackhole blackhole) throws IOException {
+        for (byte[] bytes : mHistory.textBytes) {
+            if (bytes != null) blackhole.consume(Utf8StreamDecoder.decode(new ByteArrayInputStream(bytes), PREVIEW_LENGTH).getText());
+        }
+    }
+
+    /**
+     * The previous sizeOf(): encode a copy to count bytes.
+     */
+    @Benchmark
+    public void sizeByGetBytes(Blackhole blackhole) throws UnsupportedEncodingException {
+        for (String text : mHistory.texts) {
+            if (text != null) blackhole.consume(text.getBytes("UTF-8").length);
+        }
+    }
+
+    @Benchmark
+    public void sizeByUtf8Length(Blackhole blackhole) {
+        for (String text : mHistory.texts) {
+            if (text != null) blackhole.consume(ContentSize.utf8Length(text));
+        }
+    }
+
+    @Benchmark
+    public void sizeByContentSize(Blackhole blackhole) {
+        for (String text : mHistory.texts) {
+            if (text != null) blackhole.consume(ContentSize.of(text));
+        }
+    }
+}
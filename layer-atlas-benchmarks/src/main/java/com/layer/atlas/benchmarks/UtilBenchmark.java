@@ -0,0 +1,71 @@
+package com.layer.atlas.benchmarks;
+
+import com.layer.atlas.util.ImageSizing;
+import com.layer.atlas.util.Names;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-bind sizing and naming helpers from Util and ThreePartImageUtils, over a 10k Message
+ * history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UtilBenchmark {
+    // Typical message cell bounds on a 1080p phone.
+    private static final int CELL_MAX_WIDTH = 760;
+    private static final int CELL_MAX_HEIGHT = 1400;
+
+    // ThreePartImageUtils.PREVIEW_MAX_WIDTH and PREVIEW_MAX_HEIGHT
+    private static final int PREVIEW_MAX = 512;
+
+    private SyntheticHistory mHistory;
+
+    @Setup
+    public void setUp() {
+        mHistory = SyntheticHistory.generate(10000, 1, 90);
+    }
+
+    @Benchmark
+    public void scaleDownInside(Blackhole blackhole) {
+        int[][] dimensions = mHistory.imageDimensions;
+        for (int[] d : dimensions) {
+            if (d != null) blackhole.consume(ImageSizing.scaleDownInside(d[0], d[1], CELL_MAX_WIDTH, CELL_MAX_HEIGHT));
+        }
+    }
+
+    @Benchmark
+    public void previewSizing(Blackhole blackhole) {
+        int[][] dimensions = mHistory.imageDimensions;
+        for (int[] d : dimensions) {
+            if (d == null) continue;
+            int[] preview = ImageSizing.scaleDownInside(d[0], d[1], PREVIEW_MAX, PREVIEW_MAX);
+            blackhole.consume(ImageSizing.getSampleSize(d[0], d[1], preview[0], preview[1]));
+        }
+    }
+
+    @Benchmark
+    public void getInitials(Blackhole blackhole) {
+        String[] names = mHistory.senderNames;
+        int[] senders = mHistory.senders;
+        for (int sender : senders) {
+            blackhole.consume(Names.getInitials(names[sender]));
+        }
+    }
+}
@@ -137,6 +137,23 @@ public class AtlasConversationsRecyclerView extends RecyclerView
         return this;
     }
 
+    /**
+     * Enables or disables stable item IDs on this list's AtlasConversationsAdapter.  The adapter
+     * is briefly detached while switching, since RecyclerView only accepts the change then.
+     *
+     * @see KTAtlasConversationsAdapter#setStableIdsEnabled(boolean)
+     */
+    public KTAtlasConversationsRecyclerView setStableIdsEnabled(boolean enabled)
+    {
+        if (mAdapter.hasStableIds() == enabled)
+            return this;
+
+        super.setAdapter(null);
+        mAdapter.setStableIdsEnabled(enabled);
+        super.setAdapter(mAdapter);
+        return this;
+    }
+
     public KTAtlasConversationsRecyclerView setTypeface(Typeface titleTypeface, Typeface titleUnreadTypeface, Typeface subtitleTypeface, Typeface subtitleUnreadTypeface, Typeface dateTypeface)
     {
         conversationStyle.setTitleTextTypeface(titleTypeface);
@@ -42,6 +42,7 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
     private AtlasMessagesAdapter mAdapter;
     private LinearLayoutManager mLayoutManager;
     private ItemTouchHelper mSwipeItemTouchHelper;
+    private AdapterDataObserver mPendingSendObserver;
 
     private MessageStyle mMessageStyle;
 
@@ -75,16 +76,31 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
         mAdapter.setStyle(mMessageStyle);
         super.setAdapter(mAdapter);
 
+        // Also auto-scroll to placeholders for Messages still being prepared
+        mPendingSendObserver = new AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                if (positionStart + itemCount >= mAdapter.getItemCount() - 1) autoScroll();
+            }
+        };
+        mAdapter.registerAdapterDataObserver(mPendingSendObserver);
+
         // Don't flash items when changing content
         setItemAnimator(new NoChangeAnimator());
 
         addOnScrollListener(new OnScrollListener() {
             @Override
             public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                mAdapter.onScrollStateChanged(newState);
                 for (AtlasCellFactory factory : mAdapter.getCellFactories()) {
                     factory.onScrollStateChanged(newState);
                 }
             }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                mAdapter.onScrolled(mLayoutManager.findFirstVisibleItemPosition(), mLayoutManager.findLastVisibleItemPosition(), dy, getHeight());
+            }
         });
 
         return this;
@@ -122,6 +138,7 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
                 .predicate(new Predicate(Message.Property.CONVERSATION, Predicate.Operator.EQUAL_TO, conversation))
                 .sortDescriptor(new SortDescriptor(Message.Property.POSITION, SortDescriptor.Order.ASCENDING))
                 .build()).refresh();
+        mAdapter.setPendingSendConversation(conversation);
         return this;
     }
 
@@ -149,6 +166,23 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
         return this;
     }
 
+    /**
+     * Enables or disables stable item IDs on this list's AtlasMessagesAdapter.  The adapter is
+     * briefly detached from all observers while switching, since RecyclerView only accepts the
+     * change then.
+     *
+     * @see AtlasMessagesAdapter#setStableIdsEnabled(boolean)
+     */
+    public AtlasMessagesRecyclerView setStableIdsEnabled(boolean enabled) {
+        if (mAdapter.hasStableIds() == enabled) return this;
+        super.setAdapter(null);
+        mAdapter.unregisterAdapterDataObserver(mPendingSendObserver);
+        mAdapter.setStableIdsEnabled(enabled);
+        mAdapter.registerAdapterDataObserver(mPendingSendObserver);
+        super.setAdapter(mAdapter);
+        return this;
+    }
+
     public AtlasMessagesRecyclerView setTextTypeface(Typeface myTypeface, Typeface otherTypeface) {
         mMessageStyle.setMyTextTypeface(myTypeface);
         mMessageStyle.setOtherTextTypeface(otherTypeface);
@@ -1,6 +1,7 @@
 package com.layer.atlas.adapters;
 
 import android.content.Context;
+import android.net.Uri;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -39,6 +40,12 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
 
     private ConversationStyle conversationStyle;
 
+    // Change notifications, optionally batched per frame
+    private final FrameUpdateDispatcher mUpdateDispatcher = new FrameUpdateDispatcher(this);
+
+    // Item IDs when stable IDs are enabled
+    private final StableIdTable<Uri> mStableIds = new StableIdTable<Uri>();
+
     public AtlasConversationsAdapter(Context context, LayerClient client, ParticipantProvider participantProvider, Picasso picasso)
     {
         this(context, client, participantProvider, picasso, null);
@@ -83,6 +90,38 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
         mQueryController.execute();
     }
 
+    /**
+     * Enables or disables frame-aligned batching of change notifications.  When enabled, updates
+     * from the query controller are collected between frames and dispatched to the RecyclerView
+     * as one compacted set of notifications per frame.  Disabled by default.
+     *
+     * @param enabled `true` to batch change notifications per frame.
+     * @return This AtlasConversationsAdapter.
+     */
+    public AtlasConversationsAdapter setFrameBatchingEnabled(boolean enabled)
+    {
+        mUpdateDispatcher.setEnabled(enabled);
+        return this;
+    }
+
+    public FrameUpdateDispatcher getUpdateDispatcher()
+    {
+        return mUpdateDispatcher;
+    }
+
+    /**
+     * Enables or disables stable item IDs, so RecyclerView can match rows to Conversations across
+     * full data set changes.  Must be called while the adapter is not attached to a RecyclerView.
+     *
+     * @param enabled `true` to report stable IDs.
+     * @return This AtlasConversationsAdapter.
+     */
+    public AtlasConversationsAdapter setStableIdsEnabled(boolean enabled)
+    {
+        setHasStableIds(enabled);
+        return this;
+    }
+
 
     public void filterList(String searchText)
     {
@@ -204,6 +243,10 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
     @Override
     public void onBindViewHolder(ViewHolder viewHolder, int position)
     {
+        position = mUpdateDispatcher.toCurrentPosition(position);
+        if (position < 0)
+            return;  // removed since the last frame
+
         mQueryController.updateBoundPosition(position);
         Conversation conversation = mQueryController.getItem(position);
         Context context = viewHolder.itemView.getContext();
@@ -250,7 +293,20 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
     @Override
     public int getItemCount()
     {
-        return mQueryController.getItemCount();
+        return mUpdateDispatcher.getItemCount(mQueryController.getItemCount());
+    }
+
+    @Override
+    public long getItemId(int position)
+    {
+        if (!hasStableIds())
+            return RecyclerView.NO_ID;
+
+        position = mUpdateDispatcher.toCurrentPosition(position);
+        if (position < 0)
+            return RecyclerView.NO_ID;
+
+        return mStableIds.getId(mQueryController.getItem(position).getId());
     }
 
     @Override
@@ -285,51 +341,51 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
     @Override
     public void onQueryDataSetChanged(RecyclerViewController controller)
     {
-        syncInitialMessages(0, getItemCount());
-        notifyDataSetChanged();
+        syncInitialMessages(0, mQueryController.getItemCount());
+        mUpdateDispatcher.notifyDataSetChanged();
     }
 
     @Override
     public void onQueryItemChanged(RecyclerViewController controller, int position) {
-        notifyItemChanged(position);
+        mUpdateDispatcher.notifyItemRangeChanged(position, 1);
     }
 
     @Override
     public void onQueryItemRangeChanged(RecyclerViewController controller, int positionStart, int itemCount)
     {
-        notifyItemRangeChanged(positionStart, itemCount);
+        mUpdateDispatcher.notifyItemRangeChanged(positionStart, itemCount);
     }
 
     @Override
     public void onQueryItemInserted(RecyclerViewController controller, int position)
     {
         syncInitialMessages(position, 1);
-        notifyItemInserted(position);
+        mUpdateDispatcher.notifyItemRangeInserted(position, 1);
     }
 
     @Override
     public void onQueryItemRangeInserted(RecyclerViewController controller, int positionStart, int itemCount)
     {
         syncInitialMessages(positionStart, itemCount);
-        notifyItemRangeInserted(positionStart, itemCount);
+        mUpdateDispatcher.notifyItemRangeInserted(positionStart, itemCount);
     }
 
     @Override
     public void onQueryItemRemoved(RecyclerViewController controller, int position)
     {
-        notifyItemRemoved(position);
+        mUpdateDispatcher.notifyItemRangeRemoved(position, 1);
     }
 
     @Override
     public void onQueryItemRangeRemoved(RecyclerViewController controller, int positionStart, int itemCount)
     {
-        notifyItemRangeRemoved(positionStart, itemCount);
+        mUpdateDispatcher.notifyItemRangeRemoved(positionStart, itemCount);
     }
 
     @Override
     public void onQueryItemMoved(RecyclerViewController controller, int fromPosition, int toPosition)
     {
-        notifyItemMoved(fromPosition, toPosition);
+        mUpdateDispatcher.notifyItemMoved(fromPosition, toPosition);
     }
 
 
@@ -6,6 +6,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.support.v7.widget.RecyclerView;
 import android.util.DisplayMetrics;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,23 +17,27 @@ import android.widget.TextView;
 import com.layer.atlas.AtlasAvatar;
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.MessagePreviewProvider;
+import com.layer.atlas.messagetypes.MessagePreviewRegistry;
 import com.layer.atlas.messagetypes.MessageStyle;
+import com.layer.atlas.messagetypes.ParsedContentCache;
+import com.layer.atlas.messagetypes.PendingSend;
+import com.layer.atlas.messagetypes.PendingSendRegistry;
 import com.layer.atlas.provider.Participant;
 import com.layer.atlas.provider.ParticipantProvider;
-import com.layer.atlas.util.Util;
+import com.layer.atlas.util.DateLabelFormatter;
 import com.layer.sdk.LayerClient;
-import com.layer.sdk.messaging.Actor;
+import com.layer.sdk.messaging.Conversation;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.query.ListViewController;
 import com.layer.sdk.query.Query;
 import com.layer.sdk.query.RecyclerViewController;
 import com.squareup.picasso.Picasso;
 
-import java.text.DateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -53,15 +58,26 @@ import java.util.Set;
  *
  * When rendering Messages, the AtlasMessagesAdapter first determines which CellFactory to handle
  * the Message with calling CellFactory.isBindable() on each of its registered CellFactories. The
- * first CellFactory to return `true` is used for that Message.  Then, the adapter checks for
- * available CellHolders of that type.  If none are found, a new one is created with a call to
- * CellFactory.createCellHolder().  After creating a new CellHolder (or reusing an available one),
- * the CellHolder is rendered in the UI with Message data via CellFactory.bindCellHolder().
+ * first CellFactory to return `true` is used for that Message, and the choice is remembered for
+ * that Message (and for its MessageShape, when CellFactories dispatch by shape alone).  Then, the
+ * adapter checks for available CellHolders of that type.  If none are found, a new one is created
+ * with a call to CellFactory.createCellHolder().  After creating a new CellHolder (or reusing an
+ * available one), the CellHolder is rendered in the UI with Message data via
+ * CellFactory.bindCellHolder().
  *
  * @see AtlasCellFactory
  */
 public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdapter.ViewHolder> implements AtlasBaseAdapter<Message>, RecyclerViewController.Callback {
     private final static int VIEW_TYPE_FOOTER = 0;
+    private final static int VIEW_TYPE_PENDING = -2;
+
+    // Cluster index entries store ClusterType ordinals offset past the reserved index values, with
+    // the date boundary as a flag bit.
+    private final static ClusterType[] CLUSTER_TYPES = ClusterType.values();
+    private final static int CLUSTER_TYPE_OFFSET = 2;
+    private final static byte CLUSTER_DATE_BOUNDARY = 0x10;
+
+    private final static int ROW_MODEL_CACHE_SIZE = 512;
 
     protected final LayerClient mLayerClient;
     protected final ParticipantProvider mParticipantProvider;
@@ -78,16 +94,48 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     protected final Map<Integer, CellType> mCellTypesByViewType = new HashMap<Integer, CellType>();
     protected final Map<AtlasCellFactory, Integer> mMyViewTypesByCell = new HashMap<AtlasCellFactory, Integer>();
     protected final Map<AtlasCellFactory, Integer> mTheirViewTypesByCell = new HashMap<AtlasCellFactory, Integer>();
+    private final CellFactoryDispatcher mCellFactoryDispatcher = new CellFactoryDispatcher();
 
     // Dates and Clustering
-    private final Map<Uri, Cluster> mClusterCache = new HashMap<Uri, Cluster>();
-    private final DateFormat mDateFormat;
-    private final DateFormat mTimeFormat;
+    private final ClusterIndex mClusterIndex = new ClusterIndex();
+    private final Cluster mCluster = new Cluster();
+    private final DateLabelFormatter mDateLabels;
+    private int mClusterLabelGeneration;
+
+    // Precomputed per-row values, built while pre-processing Messages
+    private final LruCache<Uri, MessageRowModel> mRowModels = new LruCache<Uri, MessageRowModel>(ROW_MODEL_CACHE_SIZE);
 
     // Read and delivery receipts
-    private Map<Message.RecipientStatus, MessagePosition> mReceiptMap = new HashMap<Message.RecipientStatus, MessagePosition>();
+    private final ReceiptIndex mReceiptIndex;
+    private final MessageReadMarker mReadMarker = new MessageReadMarker();
+
+    // Change notifications, optionally batched per frame
+    private final FrameUpdateDispatcher mUpdateDispatcher = new FrameUpdateDispatcher(this);
+
+    // Parses Messages ahead of the visible range while scrolling
+    private final ParsePrefetcher mParsePrefetcher = new ParsePrefetcher(this);
+
+    // Inflates holders during idle time and sizes the RecycledViewPool
+    private final ViewHolderPrewarmer mPrewarmer = new ViewHolderPrewarmer(this);
+
+    // Attributes slow frames to CellFactories when enabled
+    private final FrameMonitor mFrameMonitor = new FrameMonitor();
+
+    // Item IDs when stable IDs are enabled
+    private final StableIdTable<Uri> mStableIds = new StableIdTable<Uri>();
+
+    // Placeholders for Messages still being prepared, shown after the last Message
+    private Uri mPendingConversationId;
+    private final List<PendingSend> mPendingSends = new ArrayList<PendingSend>();
+    private final PendingSendRegistry.Listener mPendingSendListener = new PendingSendRegistry.Listener() {
+        @Override
+        public void onPendingSendsChanged(Uri conversationId) {
+            if (conversationId.equals(mPendingConversationId)) refreshPendingSends();
+        }
+    };
 
     private View mFooterView;
+    // Position of the footer, after all Messages and pending placeholders
     private int mFooterPosition = 0;
 
     //Stye
@@ -101,20 +149,33 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         mPicasso = picasso;
         mLayoutInflater = LayoutInflater.from(context);
         mUiThreadHandler = new Handler(Looper.getMainLooper());
-        mDateFormat = android.text.format.DateFormat.getDateFormat(context);
-        mTimeFormat = android.text.format.DateFormat.getTimeFormat(context);
+        mDateLabels = DateLabelFormatter.getInstance(context);
+        mClusterLabelGeneration = mDateLabels.getGeneration();
         mDisplayMetrics = context.getResources().getDisplayMetrics();
+        ParsedContentCache.getInstance().register(context);
 
         mQueryController = layerClient.newRecyclerViewController(null, null, this);
         mQueryController.setPreProcessCallback(new ListViewController.PreProcessCallback<Message>() {
             @Override
             public void onCache(ListViewController listViewController, Message message) {
-                for (AtlasCellFactory factory : mCellFactories) {
-                    if (factory.isBindable(message)) {
-                        factory.getParsedContent(mLayerClient, mParticipantProvider, message);
-                        break;
-                    }
-                }
+                preProcess(message);
+            }
+        });
+
+        mReceiptIndex = new ReceiptIndex(new ReceiptIndex.Source() {
+            @Override
+            public int getCount() {
+                return mQueryController.getItemCount();
+            }
+
+            @Override
+            public int getReceipts(int position) {
+                return AtlasMessagesAdapter.this.getReceipts(mQueryController.getItem(position));
+            }
+        }, new ReceiptIndex.Callback() {
+            @Override
+            public void onReceiptRowChanged(int position) {
+                mUpdateDispatcher.notifyItemRangeChanged(position, 1);
             }
         });
 
@@ -128,6 +189,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
      * @return This AtlasMessagesAdapter.
      */
     public AtlasMessagesAdapter setQuery(Query<Message> query) {
+        mReadMarker.flush();
+        mReadMarker.reset();
+        mStableIds.clear();
+        mPrewarmer.resetContentMix();
         mQueryController.setQuery(query);
         return this;
     }
@@ -141,6 +206,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     public AtlasMessagesAdapter setRecyclerView(RecyclerView recyclerView) {
         mRecyclerView = recyclerView;
+        mPrewarmer.setRecyclerView(recyclerView);
         return this;
     }
 
@@ -155,13 +221,13 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
         if (wasNull && !isNull) {
             // Insert
-            notifyItemInserted(mFooterPosition);
+            mUpdateDispatcher.notifyItemRangeInserted(mFooterPosition, 1);
         } else if (!wasNull && isNull) {
             // Delete
-            notifyItemRemoved(mFooterPosition);
+            mUpdateDispatcher.notifyItemRangeRemoved(mFooterPosition, 1);
         } else if (!wasNull && !isNull) {
             // Change
-            notifyItemChanged(mFooterPosition);
+            mUpdateDispatcher.notifyItemRangeChanged(mFooterPosition, 1);
         }
     }
 
@@ -169,6 +235,151 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         return mFooterView;
     }
 
+    /**
+     * Returns the MessageReadMarker that batches marking visible Messages as read.
+     *
+     * @return This adapter's MessageReadMarker.
+     */
+    public MessageReadMarker getReadMarker() {
+        return mReadMarker;
+    }
+
+    /**
+     * Marks every unread Message up to and including the given position as read in one batch.
+     * Useful when opening a conversation scrolled to its end.
+     *
+     * @param position Last position to mark as read.
+     */
+    public void markAllAsRead(int position) {
+        mReadMarker.markAllUpTo(this, Math.min(position, mQueryController.getItemCount() - 1), mLayerClient.getAuthenticatedUserId());
+    }
+
+    /**
+     * Forwards RecyclerView scroll state changes to this adapter.
+     *
+     * @param newState Scroll state of the RecyclerView.
+     */
+    public void onScrollStateChanged(int newState) {
+        mReadMarker.onScrollStateChanged(newState);
+    }
+
+    /**
+     * Returns the ParsePrefetcher parsing Messages ahead of the visible range while scrolling.
+     *
+     * @return This adapter's ParsePrefetcher.
+     */
+    public ParsePrefetcher getParsePrefetcher() {
+        return mParsePrefetcher;
+    }
+
+    /**
+     * Forwards RecyclerView scroll deltas to this adapter's ParsePrefetcher.
+     *
+     * @param firstVisible   First visible adapter position.
+     * @param lastVisible    Last visible adapter position.
+     * @param dy             Vertical scroll delta in pixels.
+     * @param viewportHeight Height of the RecyclerView in pixels.
+     */
+    public void onScrolled(int firstVisible, int lastVisible, int dy, int viewportHeight) {
+        mParsePrefetcher.onScrolled(firstVisible, lastVisible, dy, viewportHeight);
+    }
+
+    /**
+     * Enables or disables frame-aligned batching of change notifications.  When enabled, updates
+     * from the query controller are collected between frames and dispatched to the RecyclerView
+     * as one compacted set of notifications per frame.  Disabled by default.
+     *
+     * @param enabled `true` to batch change notifications per frame.
+     * @return This AtlasMessagesAdapter.
+     */
+    public AtlasMessagesAdapter setFrameBatchingEnabled(boolean enabled) {
+        mUpdateDispatcher.setEnabled(enabled);
+        return this;
+    }
+
+    /**
+     * Enables or disables stable item IDs.  With stable IDs, RecyclerView matches rows to Messages
+     * by ID across full data set changes, keeping their Views and state instead of treating every
+     * row as new.  Must be called while the adapter is not attached to a RecyclerView.
+     *
+     * @param enabled `true` to report stable IDs.
+     * @return This AtlasMessagesAdapter.
+     * @throws IllegalStateException if the adapter is attached to a RecyclerView.
+     */
+    public AtlasMessagesAdapter setStableIdsEnabled(boolean enabled) {
+        setHasStableIds(enabled);
+        return this;
+    }
+
+    /**
+     * Returns the FrameUpdateDispatcher delivering this adapter's change notifications, e.g. for
+     * reading its coalescing statistics.
+     *
+     * @return This adapter's FrameUpdateDispatcher.
+     */
+    public FrameUpdateDispatcher getUpdateDispatcher() {
+        return mUpdateDispatcher;
+    }
+
+    /**
+     * Enables or disables frame monitoring.  While enabled, time spent in each CellFactory's
+     * createCellHolder(), parseContent(), and bindCellHolder() is recorded, and frames that run
+     * over budget are reported to the FrameMonitor's listeners.  Requires API 16; disabled by
+     * default.
+     *
+     * @param enabled `true` to monitor frames.
+     * @return This AtlasMessagesAdapter.
+     */
+    public AtlasMessagesAdapter setFrameMonitorEnabled(boolean enabled) {
+        mFrameMonitor.setEnabled(enabled);
+        for (AtlasCellFactory factory : mCellFactories) {
+            factory.setParseObserver(mFrameMonitor.isEnabled() ? mFrameMonitor : null);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the FrameMonitor for registering slow frame listeners and reading per-factory
+     * duration histograms.
+     *
+     * @return This adapter's FrameMonitor.
+     */
+    public FrameMonitor getFrameMonitor() {
+        return mFrameMonitor;
+    }
+
+    /**
+     * Shows placeholders for Messages still being prepared for the given Conversation, such as
+     * images queued by CameraSender and GallerySender.  Placeholders follow the last Message and
+     * are replaced once their Messages are sent.
+     *
+     * @param conversation Conversation to show PendingSends for, or `null` for none.
+     * @return This AtlasMessagesAdapter.
+     * @see PendingSend
+     */
+    public AtlasMessagesAdapter setPendingSendConversation(Conversation conversation) {
+        mPendingConversationId = (conversation == null) ? null : conversation.getId();
+        refreshPendingSends();
+        return this;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        PendingSendRegistry.getInstance().addListener(mPendingSendListener);
+        refreshPendingSends();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        PendingSendRegistry.getInstance().removeListener(mPendingSendListener);
+        mUpdateDispatcher.dispatch();
+        mReadMarker.flush();
+        mParsePrefetcher.cancelAll();
+        mPrewarmer.cancel();
+    }
+
 
     //==============================================================================================
     // Listeners
@@ -203,6 +414,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         for (AtlasCellFactory CellFactory : cellFactories) {
             CellFactory.setStyle(mMessageStyle);
             mCellFactories.add(CellFactory);
+            if (mFrameMonitor.isEnabled()) CellFactory.setParseObserver(mFrameMonitor);
+            if (CellFactory instanceof MessagePreviewProvider) {
+                MessagePreviewRegistry.getInstance().register((MessagePreviewProvider) CellFactory);
+            }
 
             mViewTypeCount++;
             CellType me = new CellType(true, CellFactory);
@@ -214,6 +429,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
             mCellTypesByViewType.put(mViewTypeCount, notMe);
             mTheirViewTypesByCell.put(CellFactory, mViewTypeCount);
         }
+        mCellFactoryDispatcher.setFactories(mCellFactories);
         return this;
     }
 
@@ -221,16 +437,53 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         return mCellFactories;
     }
 
+    /**
+     * Returns the view type used for the given CellFactory's cells, e.g. for sizing its pool with
+     * the ViewHolderPrewarmer.
+     *
+     * @param cellFactory Registered CellFactory.
+     * @param isMe        `true` for cells sent by the authenticated user.
+     * @return The view type, or -1 if the CellFactory is not registered.
+     */
+    public int getViewType(AtlasCellFactory cellFactory, boolean isMe) {
+        Integer viewType = isMe ? mMyViewTypesByCell.get(cellFactory) : mTheirViewTypesByCell.get(cellFactory);
+        return viewType == null ? -1 : viewType;
+    }
+
+    /**
+     * Returns the ViewHolderPrewarmer for inflating cells during idle time and sizing the
+     * RecyclerView's pool per view type.
+     *
+     * @return This adapter's ViewHolderPrewarmer.
+     */
+    public ViewHolderPrewarmer getPrewarmer() {
+        return mPrewarmer;
+    }
+
+    boolean isCellViewType(int viewType) {
+        return mCellTypesByViewType.containsKey(viewType);
+    }
+
+    int[] getCellViewTypes() {
+        int[] viewTypes = new int[mCellTypesByViewType.size()];
+        int i = 0;
+        for (Integer viewType : mCellTypesByViewType.keySet()) {
+            viewTypes[i++] = viewType;
+        }
+        return viewTypes;
+    }
+
     @Override
     public int getItemViewType(int position) {
-        if (mFooterView != null && position == mFooterPosition) return VIEW_TYPE_FOOTER;
+        // RecyclerView positions lag behind the query controller while updates are pending.
+        position = mUpdateDispatcher.toCurrentPosition(position);
+        if (position < 0 || (mFooterView != null && position == mFooterPosition)) return VIEW_TYPE_FOOTER;
+        if (getPendingSend(position) != null) return VIEW_TYPE_PENDING;
         Message message = getItem(position);
         boolean isMe = mLayerClient.getAuthenticatedUserId().equals(message.getSender().getUserId());
-        for (AtlasCellFactory factory : mCellFactories) {
-            if (!factory.isBindable(message)) continue;
-            return isMe ? mMyViewTypesByCell.get(factory) : mTheirViewTypesByCell.get(factory);
-        }
-        return -1;
+        AtlasCellFactory factory = mCellFactoryDispatcher.getFactory(message);
+        if (factory == null) return -1;
+        return isMe ? mMyViewTypesByCell.get(factory) : mTheirViewTypesByCell.get(factory);
     }
 
     @Override
@@ -238,23 +491,35 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         if (viewType == VIEW_TYPE_FOOTER) {
             return new ViewHolder(mLayoutInflater.inflate(ViewHolder.RESOURCE_ID_FOOTER, parent, false));
         }
+        if (viewType == VIEW_TYPE_PENDING) {
+            return new PendingViewHolder(mLayoutInflater.inflate(PendingViewHolder.RESOURCE_ID, parent, false));
+        }
 
         CellType cellType = mCellTypesByViewType.get(viewType);
         int rootResId = cellType.mMe ? CellViewHolder.RESOURCE_ID_ME : CellViewHolder.RESOURCE_ID_THEM;
         CellViewHolder rootViewHolder = new CellViewHolder(mLayoutInflater.inflate(rootResId, parent, false), mParticipantProvider, mPicasso);
+        long start = mFrameMonitor.isEnabled() ? System.nanoTime() : 0;
         rootViewHolder.mCellHolder = cellType.mCellFactory.createCellHolder(rootViewHolder.mCell, cellType.mMe, mLayoutInflater);
+        if (start != 0) mFrameMonitor.record(cellType.mCellFactory, FrameMonitor.Phase.CREATE, System.nanoTime() - start);
         rootViewHolder.mCellHolderSpecs = new AtlasCellFactory.CellHolderSpecs();
         return rootViewHolder;
     }
 
     @Override
     public void onBindViewHolder(ViewHolder viewHolder, int position) {
+        position = mUpdateDispatcher.toCurrentPosition(position);
+        // Removed since the last frame; the pending removal will recycle this holder.
+        if (position < 0) return;
         mQueryController.updateBoundPosition(position);
         if (mFooterView != null && position == mFooterPosition) {
             // Footer
             bindFooter(viewHolder);
+        } else if (viewHolder instanceof PendingViewHolder) {
+            // Pending placeholder
+            bindPendingViewHolder((PendingViewHolder) viewHolder, getPendingSend(position));
         } else {
             // Cell
+            mPrewarmer.onBind(viewHolder.getItemViewType());
             bindCellViewHolder((CellViewHolder) viewHolder, position);
         }
     }
@@ -267,26 +532,30 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         viewHolder.mRoot.addView(mFooterView);
     }
 
+    private void bindPendingViewHolder(PendingViewHolder viewHolder, PendingSend pendingSend) {
+        viewHolder.mPendingSend = pendingSend;
+        // Dim placeholders still waiting behind another image
+        boolean queued = pendingSend == null || pendingSend.getState() == PendingSend.State.QUEUED;
+        viewHolder.mCell.setAlpha(queued ? 0.5f : 1f);
+    }
+
     public void bindCellViewHolder(CellViewHolder viewHolder, int position) {
         Message message = getItem(position);
         viewHolder.mMessage = message;
         CellType cellType = mCellTypesByViewType.get(viewHolder.getItemViewType());
-        boolean oneOnOne = message.getConversation().getParticipants().size() == 2;
+        MessageRowModel row = getRowModel(message);
+        boolean oneOnOne = row.isOneOnOne;
 
         // Clustering and dates
-        Cluster cluster = getClustering(message, position);
+        Cluster cluster = getClustering(position);
         if (cluster.mClusterWithPrevious == null) {
             // No previous message, so no gap
             viewHolder.mClusterSpaceGap.setVisibility(View.GONE);
             viewHolder.mTimeGroup.setVisibility(View.GONE);
         } else if (cluster.mDateBoundaryWithPrevious || cluster.mClusterWithPrevious == ClusterType.MORE_THAN_HOUR) {
             // Crossed into a new day, or > 1hr lull in conversation
-            Date sentAt = message.getSentAt();
-            if (sentAt == null) sentAt = new Date();
-            String timeBarDayText = Util.formatTimeDay(viewHolder.mCell.getContext(), sentAt);
-            viewHolder.mTimeGroupDay.setText(timeBarDayText);
-            String timeBarTimeText = mTimeFormat.format(sentAt.getTime());
-            viewHolder.mTimeGroupTime.setText(" " + timeBarTimeText);
+            viewHolder.mTimeGroupDay.setText(row.timeBarDay);
+            viewHolder.mTimeGroupTime.setText(row.timeBarTime);
             viewHolder.mTimeGroup.setVisibility(View.VISIBLE);
             viewHolder.mClusterSpaceGap.setVisibility(View.GONE);
         } else if (cluster.mClusterWithPrevious == ClusterType.LESS_THAN_MINUTE) {
@@ -302,13 +571,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         // Sender-dependent elements
         if (cellType.mMe) {
             // Read and delivery receipts
-            MessagePosition read = mReceiptMap.get(Message.RecipientStatus.READ);
-            MessagePosition delivered = mReceiptMap.get(Message.RecipientStatus.DELIVERED);
-
-            if (read != null && message == read.mMessage) {
+            if (position == mReceiptIndex.getReadPosition()) {
                 viewHolder.mReceipt.setVisibility(View.VISIBLE);
                 viewHolder.mReceipt.setText(R.string.atlas_message_item_read);
-            } else if (delivered != null && message == delivered.mMessage) {
+            } else if (position == mReceiptIndex.getDeliveredPosition()) {
                 viewHolder.mReceipt.setVisibility(View.VISIBLE);
                 viewHolder.mReceipt.setText(R.string.atlas_message_item_delivered);
             } else {
@@ -322,16 +588,16 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
                 viewHolder.mCell.setAlpha(1.0f);
             }
         } else {
-            message.markAsRead();
+            mReadMarker.markVisible(message);
             // Sender name, only for first message in cluster
             if (!oneOnOne && (cluster.mClusterWithPrevious == null || cluster.mClusterWithPrevious == ClusterType.NEW_SENDER)) {
-                Actor sender = message.getSender();
-                if (sender.getName() != null) {
-                    viewHolder.mUserName.setText(sender.getName());
-                } else {
-                    Participant participant = mParticipantProvider.getParticipant(sender.getUserId());
-                    viewHolder.mUserName.setText(participant != null ? participant.getName() : viewHolder.itemView.getResources().getString(R.string.atlas_message_item_unknown_user));
+                String senderName = row.senderName;
+                if (senderName == null) {
+                    // Not resolvable while pre-processing; the provider may know the sender now.
+                    Participant participant = mParticipantProvider.getParticipant(message.getSender().getUserId());
+                    senderName = participant != null ? participant.getName() : viewHolder.itemView.getResources().getString(R.string.atlas_message_item_unknown_user);
                 }
+                viewHolder.mUserName.setText(senderName);
                 viewHolder.mUserName.setVisibility(View.VISIBLE);
             } else {
                 viewHolder.mUserName.setVisibility(View.GONE);
@@ -356,12 +622,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         cellHolder.setMessage(message);
 
         // Cell dimensions
-        LinearLayout.LayoutParams params = (LinearLayout.LayoutParams) viewHolder.mCell.getLayoutParams();
-        int maxWidth = mRecyclerView.getWidth() - viewHolder.mRoot.getPaddingLeft() - viewHolder.mRoot.getPaddingRight() - params.leftMargin - params.rightMargin;
+        int maxWidth = mRecyclerView.getWidth() - viewHolder.mCellInset;
         if (!oneOnOne && !cellType.mMe) {
             // Subtract off avatar width if needed
-            ViewGroup.MarginLayoutParams avatarParams = (ViewGroup.MarginLayoutParams) viewHolder.mAvatar.getLayoutParams();
-            maxWidth -= avatarParams.width + avatarParams.rightMargin + avatarParams.leftMargin;
+            maxWidth -= viewHolder.mAvatarInset;
         }
         // TODO: subtract spacing rather than multiply by 0.8 to handle screen sizes more cleanly
         int maxHeight = (int) Math.round(0.8 * mRecyclerView.getHeight());
@@ -370,12 +634,34 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         viewHolder.mCellHolderSpecs.position = position;
         viewHolder.mCellHolderSpecs.maxWidth = maxWidth;
         viewHolder.mCellHolderSpecs.maxHeight = maxHeight;
-        cellType.mCellFactory.bindCellHolder(cellHolder, cellType.mCellFactory.getParsedContent(mLayerClient, mParticipantProvider, message), message, viewHolder.mCellHolderSpecs);
+        AtlasCellFactory.ParsedContent parsed = cellType.mCellFactory.getParsedContent(mLayerClient, mParticipantProvider, message);
+        long start = mFrameMonitor.isEnabled() ? System.nanoTime() : 0;
+        cellType.mCellFactory.bindCellHolder(cellHolder, parsed, message, viewHolder.mCellHolderSpecs);
+        if (start != 0) mFrameMonitor.record(cellType.mCellFactory, FrameMonitor.Phase.BIND, System.nanoTime() - start);
     }
 
     @Override
     public int getItemCount() {
-        return mQueryController.getItemCount() + ((mFooterView == null) ? 0 : 1);
+        return mUpdateDispatcher.getItemCount(getCurrentItemCount());
+    }
+
+    /**
+     * Returns the item count including updates not yet dispatched to the RecyclerView.
+     */
+    private int getCurrentItemCount() {
+        return mQueryController.getItemCount() + mPendingSends.size() + ((mFooterView == null) ? 0 : 1);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (!hasStableIds()) return RecyclerView.NO_ID;
+        position = mUpdateDispatcher.toCurrentPosition(position);
+        if (position < 0) return RecyclerView.NO_ID;
+        if (mFooterView != null && position == mFooterPosition) return StableIdTable.RESERVED_ID;
+        PendingSend pendingSend = getPendingSend(position);
+        // Table IDs are positive, so negated PendingSend IDs never collide with them.
+        if (pendingSend != null) return -pendingSend.getId();
+        return mStableIds.getId(mQueryController.getItem(position).getId());
     }
 
     @Override
@@ -391,6 +677,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     @Override
     public Message getItem(int position) {
         if (mFooterView != null && position == mFooterPosition) return null;
+        if (getPendingSend(position) != null) return null;
         return mQueryController.getItem(position);
     }
 
@@ -402,128 +689,216 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
 
     //==============================================================================================
-    // Clustering
+    // Pending sends
     //==============================================================================================
 
-    // TODO: optimize by limiting search to positions in- and around- visible range
-    private Cluster getClustering(Message message, int position) {
-        Cluster result = mClusterCache.get(message.getId());
-        if (result == null) {
-            result = new Cluster();
-            mClusterCache.put(message.getId(), result);
-        }
-
-        int previousPosition = position - 1;
-        Message previousMessage = (previousPosition >= 0) ? getItem(previousPosition) : null;
-        if (previousMessage != null) {
-            result.mDateBoundaryWithPrevious = isDateBoundary(previousMessage.getSentAt(), message.getSentAt());
-            result.mClusterWithPrevious = ClusterType.fromMessages(previousMessage, message);
+    /**
+     * Returns the PendingSend shown at the given current position, or `null` if there is none.
+     */
+    private PendingSend getPendingSend(int position) {
+        int index = position - (mFooterPosition - mPendingSends.size());
+        if (index < 0 || index >= mPendingSends.size()) return null;
+        return mPendingSends.get(index);
+    }
 
-            Cluster previousCluster = mClusterCache.get(previousMessage.getId());
-            if (previousCluster == null) {
-                previousCluster = new Cluster();
-                mClusterCache.put(previousMessage.getId(), previousCluster);
-            } else {
-                // does the previous need to change its clustering?
-                if ((previousCluster.mClusterWithNext != result.mClusterWithPrevious) ||
-                        (previousCluster.mDateBoundaryWithNext != result.mDateBoundaryWithPrevious)) {
-                    requestUpdate(previousMessage, previousPosition);
-                }
+    /**
+     * Brings placeholders in line with the PendingSendRegistry.  PendingSends only ever finish or
+     * get appended, so removals followed by appends reproduce the registry's order.
+     */
+    private void refreshPendingSends() {
+        List<PendingSend> current = (mPendingConversationId == null) ? new ArrayList<PendingSend>() : PendingSendRegistry.getInstance().getPendingSends(mPendingConversationId);
+        int start = mFooterPosition - mPendingSends.size();
+        for (int i = mPendingSends.size() - 1; i >= 0; i--) {
+            if (current.contains(mPendingSends.get(i))) {
+                // State may have changed
+                mUpdateDispatcher.notifyItemRangeChanged(start + i, 1);
+                continue;
             }
-            previousCluster.mClusterWithNext = result.mClusterWithPrevious;
-            previousCluster.mDateBoundaryWithNext = result.mDateBoundaryWithPrevious;
+            mPendingSends.remove(i);
+            mFooterPosition--;
+            mUpdateDispatcher.notifyItemRangeRemoved(start + i, 1);
+        }
+        for (PendingSend pendingSend : current) {
+            if (mPendingSends.contains(pendingSend)) continue;
+            mPendingSends.add(pendingSend);
+            mFooterPosition++;
+            mUpdateDispatcher.notifyItemRangeInserted(start + mPendingSends.size() - 1, 1);
         }
+    }
 
-        int nextPosition = position + 1;
-        Message nextMessage = (nextPosition < getItemCount()) ? getItem(nextPosition) : null;
-        if (nextMessage != null) {
-            result.mDateBoundaryWithNext = isDateBoundary(message.getSentAt(), nextMessage.getSentAt());
-            result.mClusterWithNext = ClusterType.fromMessages(message, nextMessage);
 
-            Cluster nextCluster = mClusterCache.get(nextMessage.getId());
-            if (nextCluster == null) {
-                nextCluster = new Cluster();
-                mClusterCache.put(nextMessage.getId(), nextCluster);
-            } else {
-                // does the next need to change its clustering?
-                if ((nextCluster.mClusterWithPrevious != result.mClusterWithNext) ||
-                        (nextCluster.mDateBoundaryWithPrevious != result.mDateBoundaryWithNext)) {
-                    requestUpdate(nextMessage, nextPosition);
-                }
-            }
-            nextCluster.mClusterWithPrevious = result.mClusterWithNext;
-            nextCluster.mDateBoundaryWithPrevious = result.mDateBoundaryWithNext;
-        }
+    //==============================================================================================
+    // Pre-processing
+    //==============================================================================================
 
-        return result;
+    /**
+     * Parses content and builds the row model for the given Message.  Called off the main thread
+     * by the query controller and the ParsePrefetcher.
+     */
+    void preProcess(Message message) {
+        AtlasCellFactory factory = mCellFactoryDispatcher.getFactory(message);
+        if (factory != null) {
+            factory.getParsedContent(mLayerClient, mParticipantProvider, message);
+        }
+        mRowModels.put(message.getId(), createRowModel(message));
     }
 
-    private static boolean isDateBoundary(Date d1, Date d2) {
-        if (d1 == null || d2 == null) return false;
-        return (d1.getYear() != d2.getYear()) || (d1.getMonth() != d2.getMonth()) || (d1.getDay() != d2.getDay());
+    AtlasCellFactory getCellFactory(Message message) {
+        return mCellFactoryDispatcher.getFactory(message);
     }
 
-    private void requestUpdate(final Message message, final int lastPosition) {
-        mUiThreadHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                notifyItemChanged(getPosition(message, lastPosition));
-            }
-        });
+    /**
+     * Returns the Message at the given RecyclerView position, or `null` for the footer and
+     * positions out of range.
+     */
+    Message getPrefetchItem(int position) {
+        if (position >= getItemCount()) return null;
+        position = mUpdateDispatcher.toCurrentPosition(position);
+        if (position < 0 || position >= mQueryController.getItemCount()) return null;
+        return mQueryController.getItem(position);
     }
 
 
     //==============================================================================================
-    // Read and delivery receipts
+    // Row models
     //==============================================================================================
 
-    // TODO: find clever way to prevent worst-case O(n) -- perhaps based on visible positions?
-    private void updateReceipts() {
-        final String userId = mLayerClient.getAuthenticatedUserId();
-        Map<Message.RecipientStatus, MessagePosition> receiptMap = new HashMap<Message.RecipientStatus, MessagePosition>();
-        for (int position = getItemCount(); position >= 0; position--) {
-            Message message = getItem(position);
-            if (message == null) continue;
+    /**
+     * Returns the precomputed MessageRowModel for the given Message, building it on this thread
+     * if pre-processing has not produced a current one.
+     */
+    private MessageRowModel getRowModel(Message message) {
+        MessageRowModel row = mRowModels.get(message.getId());
+        if (row == null || row.isExpired(mDateLabels)) {
+            row = createRowModel(message);
+            mRowModels.put(message.getId(), row);
+        }
+        return row;
+    }
 
-            // Only display receipts for our own messages
-            if (!userId.equals(message.getSender().getUserId())) continue;
+    private MessageRowModel createRowModel(Message message) {
+        return MessageRowModel.create(mDateLabels, mLayerClient.getAuthenticatedUserId(), mParticipantProvider, message);
+    }
 
-            for (Map.Entry<String, Message.RecipientStatus> entry : message.getRecipientStatus().entrySet()) {
-                // Only show receipts for other members
-                if (entry.getKey().equals(userId)) continue;
+    private void invalidateRowModels(int positionStart, int itemCount) {
+        int end = Math.min(positionStart + itemCount, mQueryController.getItemCount());
+        for (int position = Math.max(0, positionStart); position < end; position++) {
+            Message message = mQueryController.getItem(position);
+            if (message != null) mRowModels.remove(message.getId());
+        }
+    }
 
-                // Only the latest entry for this RecipientStatus matters
-                if (receiptMap.containsKey(entry.getValue())) continue;
 
-                // Found the latest entry for this RecipientStatus
-                receiptMap.put(entry.getValue(), new MessagePosition(message, position));
-            }
-            if (receiptMap.containsKey(Message.RecipientStatus.READ) && receiptMap.containsKey(Message.RecipientStatus.DELIVERED)) {
-                break;
-            }
-        }
+    //==============================================================================================
+    // Clustering
+    //==============================================================================================
 
-        // Refresh previously-marked messages
-        Set<MessagePosition> previousReceiptsToRefresh = new HashSet<MessagePosition>();
-        for (Message.RecipientStatus status : Message.RecipientStatus.values()) {
-            MessagePosition current = (mReceiptMap == null) ? null : mReceiptMap.get(status);
-            MessagePosition next = receiptMap.get(status);
-            if (current != null && next != null && current.mMessage != next.mMessage) {
-                previousReceiptsToRefresh.add(current);
-                previousReceiptsToRefresh.add(next);
-            }
-            if (current != null && next == null) {
-                previousReceiptsToRefresh.add(current);
-            }
-            if (current == null && next != null) {
-                previousReceiptsToRefresh.add(next);
-            }
+    /**
+     * Returns the clustering of the Message at `position` with its neighbors from the cluster
+     * index.  The returned Cluster is reused between calls and must only be read on the main
+     * thread before the next call.
+     */
+    private Cluster getClustering(int position) {
+        byte previous = getClusterEntry(position);
+        byte next = getClusterEntry(position + 1);
+        mCluster.mClusterWithPrevious = toClusterType(previous);
+        mCluster.mDateBoundaryWithPrevious = (previous & CLUSTER_DATE_BOUNDARY) != 0;
+        mCluster.mClusterWithNext = toClusterType(next);
+        mCluster.mDateBoundaryWithNext = (next & CLUSTER_DATE_BOUNDARY) != 0;
+        return mCluster;
+    }
+
+    /**
+     * Returns the cluster index entry describing how the Message at `position` clusters with the
+     * Message before it, computing and storing it first if needed.
+     */
+    private byte getClusterEntry(int position) {
+        int count = mQueryController.getItemCount();
+        if (position <= 0 || position >= count) return ClusterIndex.NONE;
+        // Date boundaries move with the time zone.
+        int generation = mDateLabels.getGeneration();
+        if (mClusterIndex.size() != count || generation != mClusterLabelGeneration) {
+            mClusterIndex.reset(count);
+            mClusterLabelGeneration = generation;
         }
-        for (MessagePosition message : previousReceiptsToRefresh) {
-            notifyItemChanged(getPosition(message.mMessage, message.mPosition));
+
+        byte entry = mClusterIndex.get(position);
+        if (entry != ClusterIndex.UNKNOWN) return entry;
+
+        Message previous = mQueryController.getItem(position - 1);
+        Message message = mQueryController.getItem(position);
+        boolean sameSender = previous.getSender().equals(message.getSender());
+        entry = (byte) (ClusterType.fromTimes(sameSender, previous.getSentAt(), message.getSentAt()).ordinal() + CLUSTER_TYPE_OFFSET);
+        if (mDateLabels.isDateBoundary(previous.getSentAt(), message.getSentAt())) {
+            entry |= CLUSTER_DATE_BOUNDARY;
         }
+        mClusterIndex.set(position, entry);
+        return entry;
+    }
+
+    private static ClusterType toClusterType(byte entry) {
+        if (entry == ClusterIndex.NONE || entry == ClusterIndex.UNKNOWN) return null;
+        return CLUSTER_TYPES[(entry & ~CLUSTER_DATE_BOUNDARY) - CLUSTER_TYPE_OFFSET];
+    }
+
+    /**
+     * Recomputes the cluster entry at `position` and notifies `row` if it was last bound with a
+     * different entry.  Entries that were never computed were never bound, so they are skipped.
+     */
+    private void refreshClusterNeighbor(int row, int position, byte boundEntry) {
+        if (boundEntry == ClusterIndex.UNKNOWN) return;
+        if (row < 0 || row >= mQueryController.getItemCount()) return;
+        if (getClusterEntry(position) != boundEntry) mUpdateDispatcher.notifyItemRangeChanged(row, 1);
+    }
+
+    private void notifyClusterRowsChanged(int start, int count) {
+        int from = Math.max(0, start);
+        int to = Math.min(mQueryController.getItemCount(), start + count);
+        if (from < to) mUpdateDispatcher.notifyItemRangeChanged(from, to - from);
+    }
+
+    /**
+     * Opens cluster index entries for inserted Messages, returning the entry previously bound
+     * between the rows on either side of the inserted range.
+     */
+    private byte insertClusters(int positionStart, int itemCount) {
+        byte boundary = mClusterIndex.get(positionStart);
+        mClusterIndex.insert(positionStart, itemCount);
+        mClusterIndex.invalidate(positionStart + itemCount, 1);
+        return boundary;
+    }
+
+    private void refreshClustersAroundInsert(int positionStart, int itemCount, byte boundary) {
+        refreshClusterNeighbor(positionStart - 1, positionStart, boundary);
+        refreshClusterNeighbor(positionStart + itemCount, positionStart + itemCount, boundary);
+    }
 
-        mReceiptMap = receiptMap;
+    //==============================================================================================
+    // Read and delivery receipts
+    //==============================================================================================
+
+    /**
+     * Returns the ReceiptIndex bitmask for the given Message: READ and/or DELIVERED if any other
+     * participant has that status for our own Message, or 0 for Messages sent by others.
+     */
+    private int getReceipts(Message message) {
+        if (message == null) return 0;
+        String userId = mLayerClient.getAuthenticatedUserId();
+
+        // Only display receipts for our own messages
+        if (!userId.equals(message.getSender().getUserId())) return 0;
+
+        int receipts = 0;
+        for (Map.Entry<String, Message.RecipientStatus> entry : message.getRecipientStatus().entrySet()) {
+            // Only show receipts for other members
+            if (entry.getKey().equals(userId)) continue;
+            if (entry.getValue() == Message.RecipientStatus.READ) {
+                receipts |= ReceiptIndex.READ;
+            } else if (entry.getValue() == Message.RecipientStatus.DELIVERED) {
+                receipts |= ReceiptIndex.DELIVERED;
+            }
+        }
+        return receipts;
     }
 
 
@@ -533,62 +908,102 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public void onQueryDataSetChanged(RecyclerViewController controller) {
-        mFooterPosition = mQueryController.getItemCount();
-        updateReceipts();
-        notifyDataSetChanged();
+        mFooterPosition = mQueryController.getItemCount() + mPendingSends.size();
+        mClusterIndex.reset(mQueryController.getItemCount());
+        mReceiptIndex.reset();
+        mParsePrefetcher.onPositionsChanged();
+        mUpdateDispatcher.notifyDataSetChanged();
     }
 
     @Override
     public void onQueryItemChanged(RecyclerViewController controller, int position) {
-        updateReceipts();
-        notifyItemChanged(position);
+        onQueryItemRangeChanged(controller, position, 1);
     }
 
     @Override
     public void onQueryItemRangeChanged(RecyclerViewController controller, int positionStart, int itemCount) {
-        updateReceipts();
-        notifyItemRangeChanged(positionStart, itemCount);
+        byte before = mClusterIndex.get(positionStart);
+        byte after = mClusterIndex.get(positionStart + itemCount);
+        mClusterIndex.invalidate(positionStart, itemCount + 1);
+        invalidateRowModels(positionStart, itemCount);
+        mUpdateDispatcher.notifyItemRangeChanged(positionStart, itemCount);
+        mReceiptIndex.onItemRangeChanged(positionStart, itemCount);
+        refreshClusterNeighbor(positionStart - 1, positionStart, before);
+        refreshClusterNeighbor(positionStart + itemCount, positionStart + itemCount, after);
     }
 
     @Override
     public void onQueryItemInserted(RecyclerViewController controller, int position) {
         mFooterPosition++;
-        updateReceipts();
-        notifyItemInserted(position);
-        if (mAppendListener != null && (position + 1) == getItemCount()) {
-            mAppendListener.onMessageAppend(this, getItem(position));
+        mParsePrefetcher.onPositionsChanged();
+        byte boundary = insertClusters(position, 1);
+        mUpdateDispatcher.notifyItemRangeInserted(position, 1);
+        mReceiptIndex.onItemRangeInserted(position, 1);
+        refreshClustersAroundInsert(position, 1, boundary);
+        if (mAppendListener != null && (position + 1) == getCurrentItemCount() - mPendingSends.size()) {
+            notifyAppend(getItem(position));
         }
     }
 
     @Override
     public void onQueryItemRangeInserted(RecyclerViewController controller, int positionStart, int itemCount) {
         mFooterPosition += itemCount;
-        updateReceipts();
-        notifyItemRangeInserted(positionStart, itemCount);
+        mParsePrefetcher.onPositionsChanged();
+        byte boundary = insertClusters(positionStart, itemCount);
+        mUpdateDispatcher.notifyItemRangeInserted(positionStart, itemCount);
+        mReceiptIndex.onItemRangeInserted(positionStart, itemCount);
+        refreshClustersAroundInsert(positionStart, itemCount, boundary);
         int positionEnd = positionStart + itemCount;
-        if (mAppendListener != null && (positionEnd + 1) == getItemCount()) {
-            mAppendListener.onMessageAppend(this, getItem(positionEnd));
+        if (mAppendListener != null && (positionEnd + 1) == getCurrentItemCount() - mPendingSends.size()) {
+            notifyAppend(getItem(positionEnd));
         }
     }
 
+    /**
+     * Alerts the OnMessageAppendListener once the RecyclerView has been told about the append, so
+     * scrolling to the new end lands on the appended row.
+     */
+    private void notifyAppend(final Message message) {
+        mUpdateDispatcher.runAfterDispatch(new Runnable() {
+            @Override
+            public void run() {
+                if (mAppendListener != null) mAppendListener.onMessageAppend(AtlasMessagesAdapter.this, message);
+            }
+        });
+    }
+
     @Override
     public void onQueryItemRemoved(RecyclerViewController controller, int position) {
-        mFooterPosition--;
-        updateReceipts();
-        notifyItemRemoved(position);
+        onQueryItemRangeRemoved(controller, position, 1);
     }
 
     @Override
     public void onQueryItemRangeRemoved(RecyclerViewController controller, int positionStart, int itemCount) {
         mFooterPosition -= itemCount;
-        updateReceipts();
-        notifyItemRangeRemoved(positionStart, itemCount);
+        mParsePrefetcher.onPositionsChanged();
+        byte before = mClusterIndex.get(positionStart);
+        byte after = mClusterIndex.get(positionStart + itemCount);
+        mClusterIndex.remove(positionStart, itemCount);
+        mClusterIndex.invalidate(positionStart, 1);
+        mUpdateDispatcher.notifyItemRangeRemoved(positionStart, itemCount);
+        mReceiptIndex.onItemRangeRemoved(positionStart, itemCount);
+        refreshClusterNeighbor(positionStart - 1, positionStart, before);
+        refreshClusterNeighbor(positionStart, positionStart, after);
     }
 
     @Override
     public void onQueryItemMoved(RecyclerViewController controller, int fromPosition, int toPosition) {
-        updateReceipts();
-        notifyItemMoved(fromPosition, toPosition);
+        // The moved Message, its new neighbors, and the Message that filled its old spot all
+        // cluster differently now.
+        int vacated = (fromPosition < toPosition) ? fromPosition : fromPosition + 1;
+        mParsePrefetcher.onPositionsChanged();
+        mClusterIndex.move(fromPosition, toPosition);
+        mClusterIndex.invalidate(vacated, 1);
+        mClusterIndex.invalidate(toPosition, 2);
+        mUpdateDispatcher.notifyItemMoved(fromPosition, toPosition);
+        mReceiptIndex.onItemMoved(fromPosition, toPosition);
+        notifyClusterRowsChanged(vacated - 1, 2);
+        notifyClusterRowsChanged(toPosition - 1, 3);
     }
 
 
@@ -608,6 +1023,20 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         }
     }
 
+    static class PendingViewHolder extends ViewHolder {
+        public final static int RESOURCE_ID = R.layout.atlas_message_item_pending;
+
+        protected PendingSend mPendingSend;
+
+        // View cache
+        protected View mCell;
+
+        public PendingViewHolder(View itemView) {
+            super(itemView);
+            mCell = itemView.findViewById(R.id.cell);
+        }
+    }
+
     static class CellViewHolder extends ViewHolder {
         public final static int RESOURCE_ID_ME = R.layout.atlas_message_item_me;
         public final static int RESOURCE_ID_THEM = R.layout.atlas_message_item_them;
@@ -624,6 +1053,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         protected ViewGroup mCell;
         protected TextView mReceipt;
 
+        // Horizontal space around the cell, and around the avatar when shown
+        protected int mCellInset;
+        protected int mAvatarInset;
+
         // Cell
         protected AtlasCellFactory.CellHolder mCellHolder;
         protected AtlasCellFactory.CellHolderSpecs mCellHolderSpecs;
@@ -640,30 +1073,13 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
             mAvatar = ((AtlasAvatar) itemView.findViewById(R.id.avatar));
             if (mAvatar != null) mAvatar.init(participantProvider, picasso);
-        }
-    }
-
-    private enum ClusterType {
-        NEW_SENDER,
-        LESS_THAN_MINUTE,
-        LESS_THAN_HOUR,
-        MORE_THAN_HOUR;
 
-        private static final long MILLIS_MINUTE = 60 * 1000;
-        private static final long MILLIS_HOUR = 60 * MILLIS_MINUTE;
-
-        public static ClusterType fromMessages(Message older, Message newer) {
-            // Different users?
-            if (!older.getSender().equals(newer.getSender())) return NEW_SENDER;
-
-            // Time clustering for same user?
-            Date oldSentAt = older.getSentAt();
-            Date newSentAt = newer.getSentAt();
-            if (oldSentAt == null || newSentAt == null) return LESS_THAN_MINUTE;
-            long delta = Math.abs(newSentAt.getTime() - oldSentAt.getTime());
-            if (delta <= MILLIS_MINUTE) return LESS_THAN_MINUTE;
-            if (delta <= MILLIS_HOUR) return LESS_THAN_HOUR;
-            return MORE_THAN_HOUR;
+            LinearLayout.LayoutParams params = (LinearLayout.LayoutParams) mCell.getLayoutParams();
+            mCellInset = mRoot.getPaddingLeft() + mRoot.getPaddingRight() + params.leftMargin + params.rightMargin;
+            if (mAvatar != null) {
+                ViewGroup.MarginLayoutParams avatarParams = (ViewGroup.MarginLayoutParams) mAvatar.getLayoutParams();
+                mAvatarInset = avatarParams.width + avatarParams.rightMargin + avatarParams.leftMargin;
+            }
         }
     }
 
@@ -675,16 +1091,6 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         public ClusterType mClusterWithNext;
     }
 
-    private static class MessagePosition {
-        public Message mMessage;
-        public int mPosition;
-
-        public MessagePosition(Message message, int position) {
-            mMessage = message;
-            mPosition = position;
-        }
-    }
-
     private static class CellType {
         protected final boolean mMe;
         protected final AtlasCellFactory mCellFactory;
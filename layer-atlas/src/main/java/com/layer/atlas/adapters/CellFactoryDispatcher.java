@@ -0,0 +1,60 @@
+package com.layer.atlas.adapters;
+
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.MessageShape;
+import com.layer.sdk.messaging.Message;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CellFactoryDispatcher resolves Messages to the first registered AtlasCellFactory that can bind
+ * them.  Results are memoized per Message ID, and per MessageShape signature when every factory
+ * consulted decides by shape alone, so the linear isBindable() scan runs about once per shape
+ * rather than on every layout pass.  Safe to call from the main thread and the pre-processing
+ * thread.
+ *
+ * Factories are only ever appended, so earlier results stay valid as factories are registered.
+ *
+ * @see AtlasCellFactory#isBindableByShape()
+ */
+final class CellFactoryDispatcher {
+    private static final int MESSAGE_CACHE_SIZE = 1024;
+
+    private volatile AtlasCellFactory[] mFactories = new AtlasCellFactory[0];
+    private final ConcurrentHashMap<String, AtlasCellFactory> mFactoriesByShape = new ConcurrentHashMap<String, AtlasCellFactory>();
+    private final LruCache<Uri, AtlasCellFactory> mFactoriesByMessage = new LruCache<Uri, AtlasCellFactory>(MESSAGE_CACHE_SIZE);
+
+    public void setFactories(Collection<AtlasCellFactory> factories) {
+        mFactories = factories.toArray(new AtlasCellFactory[factories.size()]);
+    }
+
+    /**
+     * Returns the AtlasCellFactory for the given Message, or `null` if no factory can bind it.
+     */
+    public AtlasCellFactory getFactory(Message message) {
+        Uri id = message.getId();
+        AtlasCellFactory factory = mFactoriesByMessage.get(id);
+        if (factory != null) return factory;
+
+        String shape = MessageShape.getSignature(message);
+        factory = mFactoriesByShape.get(shape);
+        if (factory == null) {
+            boolean byShape = true;
+            for (AtlasCellFactory candidate : mFactories) {
+                byShape &= candidate.isBindableByShape();
+                if (candidate.isBindable(message)) {
+                    factory = candidate;
+                    break;
+                }
+            }
+            if (factory == null) return null;
+            if (byShape) mFactoriesByShape.put(shape, factory);
+        }
+        mFactoriesByMessage.put(id, factory);
+        return factory;
+    }
+}
@@ -0,0 +1,108 @@
+package com.layer.atlas.adapters;
+
+import java.util.Arrays;
+
+/**
+ * ClusterIndex is a position-indexed table of how each Message clusters with the Message before
+ * it.  Each position holds one byte, so the clustering of a Message with its next neighbor is
+ * simply the entry at the following position.  Entries are computed lazily by the owning adapter
+ * and are shifted, inserted, and invalidated in place as the query controller reports changes,
+ * keeping storage bounded to the size of the loaded window.
+ */
+final class ClusterIndex {
+    // Entry has not been computed yet.
+    public static final byte UNKNOWN = 0;
+
+    // No neighbor exists at this position (first Message, or past the last Message).
+    public static final byte NONE = 1;
+
+    private static final int MIN_CAPACITY = 64;
+
+    private byte[] mEntries = new byte[MIN_CAPACITY];
+    private int mSize = 0;
+
+    /**
+     * Returns the number of positions tracked by this index.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the entry at the given position, or `NONE` when the position is outside the index.
+     */
+    public byte get(int position) {
+        if (position < 0 || position >= mSize) return NONE;
+        return mEntries[position];
+    }
+
+    public void set(int position, byte value) {
+        if (position < 0 || position >= mSize) return;
+        mEntries[position] = value;
+    }
+
+    /**
+     * Discards all entries and resizes this index to hold `size` unknown positions.
+     */
+    public void reset(int size) {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size)) << 1);
+        if (capacity != mEntries.length) {
+            mEntries = new byte[capacity];
+        } else {
+            Arrays.fill(mEntries, 0, mSize, UNKNOWN);
+        }
+        mSize = size;
+    }
+
+    /**
+     * Marks `count` positions starting at `start` as unknown.
+     */
+    public void invalidate(int start, int count) {
+        int from = Math.max(0, start);
+        int to = Math.min(mSize, start + count);
+        if (from < to) Arrays.fill(mEntries, from, to, UNKNOWN);
+    }
+
+    /**
+     * Opens `count` unknown positions at `start`, shifting later positions down.
+     */
+    public void insert(int start, int count) {
+        if (count <= 0) return;
+        start = Math.min(Math.max(0, start), mSize);
+        ensureCapacity(mSize + count);
+        System.arraycopy(mEntries, start, mEntries, start + count, mSize - start);
+        Arrays.fill(mEntries, start, start + count, UNKNOWN);
+        mSize += count;
+    }
+
+    /**
+     * Removes `count` positions starting at `start`, shifting later positions up.
+     */
+    public void remove(int start, int count) {
+        if (count <= 0 || start >= mSize) return;
+        start = Math.max(0, start);
+        count = Math.min(count, mSize - start);
+        System.arraycopy(mEntries, start + count, mEntries, start, mSize - start - count);
+        mSize -= count;
+        Arrays.fill(mEntries, mSize, mSize + count, UNKNOWN);
+    }
+
+    /**
+     * Moves the entry at `from` to `to`, shifting the positions in between.
+     */
+    public void move(int from, int to) {
+        if (from == to || from < 0 || to < 0 || from >= mSize || to >= mSize) return;
+        byte value = mEntries[from];
+        if (from < to) {
+            System.arraycopy(mEntries, from + 1, mEntries, from, to - from);
+        } else {
+            System.arraycopy(mEntries, to, mEntries, to + 1, from - to);
+        }
+        mEntries[to] = value;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mEntries.length) return;
+        mEntries = Arrays.copyOf(mEntries, Math.max(capacity, mEntries.length << 1));
+    }
+}
@@ -0,0 +1,29 @@
+package com.layer.atlas.adapters;
+
+import java.util.Date;
+
+/**
+ * ClusterType describes how a Message clusters with its neighbor in the AtlasMessagesAdapter,
+ * which determines the spacing, sender name, and avatar shown around it.
+ */
+enum ClusterType {
+    NEW_SENDER,
+    LESS_THAN_MINUTE,
+    LESS_THAN_HOUR,
+    MORE_THAN_HOUR;
+
+    private static final long MILLIS_MINUTE = 60 * 1000;
+    private static final long MILLIS_HOUR = 60 * MILLIS_MINUTE;
+
+    public static ClusterType fromTimes(boolean sameSender, Date olderSentAt, Date newerSentAt) {
+        // Different users?
+        if (!sameSender) return NEW_SENDER;
+
+        // Time clustering for same user?
+        if (olderSentAt == null || newerSentAt == null) return LESS_THAN_MINUTE;
+        long delta = Math.abs(newerSentAt.getTime() - olderSentAt.getTime());
+        if (delta <= MILLIS_MINUTE) return LESS_THAN_MINUTE;
+        if (delta <= MILLIS_HOUR) return LESS_THAN_HOUR;
+        return MORE_THAN_HOUR;
+    }
+}
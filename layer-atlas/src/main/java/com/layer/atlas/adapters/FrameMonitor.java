@@ -0,0 +1,472 @@
+package com.layer.atlas.adapters;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * FrameMonitor attributes slow frames to the AtlasCellFactories that ran in them.  While enabled,
+ * the AtlasMessagesAdapter reports how long each factory spent in createCellHolder(),
+ * parseContent(), and bindCellHolder().  Main-thread work is collected per Choreographer frame;
+ * when a frame runs over budget, Listeners receive a SlowFrame listing the factories that ran in
+ * it, slowest first.  All durations, including parses on background threads, also feed rolling
+ * Histograms per factory class and Phase.
+ *
+ * Monitoring is opt-in, requires API 16, and keeps Choreographer ticking while cells are being
+ * created or bound.  When disabled, the adapter skips all timing.
+ *
+ * @see AtlasMessagesAdapter#setFrameMonitorEnabled(boolean)
+ */
+public class FrameMonitor implements AtlasCellFactory.ParseObserver {
+    public static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667L;
+
+    // A frame interval counts as slow once it exceeds the budget by half, i.e. a vsync was missed.
+    private static final float SLOW_INTERVAL_FACTOR = 1.5f;
+
+    // Keep ticking for this many frames after the last recorded work.
+    private static final int IDLE_FRAMES = 60;
+
+    public enum Phase {
+        CREATE,
+        PARSE,
+        BIND
+    }
+
+    private FrameTicker mTicker;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private final Map<Class<?>, Histogram[]> mHistograms = new HashMap<Class<?>, Histogram[]>();
+
+    private volatile boolean mEnabled = false;
+    private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+
+    // Main-thread state
+    private boolean mTicking = false;
+    private long mLastFrameTimeNanos = 0;
+    private int mIdleFrames = 0;
+    private final Map<Class<?>, Attribution> mCurrentFrame = new HashMap<Class<?>, Attribution>();
+    private long mCurrentFrameWorkNanos = 0;
+
+    // Statistics
+    private long mFrameCount = 0;
+    private long mSlowFrameCount = 0;
+
+    /**
+     * Enables or disables monitoring.  Enabling on devices below API 16 has no effect.
+     *
+     * @param enabled `true` to monitor frames.
+     * @return This FrameMonitor.
+     */
+    FrameMonitor setEnabled(boolean enabled) {
+        if (enabled && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            if (Log.isLoggable(Log.WARN)) Log.w("FrameMonitor requires API 16");
+            return this;
+        }
+        if (mEnabled == enabled) return this;
+        if (enabled && mTicker == null) mTicker = new FrameTicker(this);
+        mEnabled = enabled;
+        if (!enabled) {
+            if (mTicking) mTicker.cancel();
+            mTicking = false;
+            mCurrentFrame.clear();
+            mCurrentFrameWorkNanos = 0;
+        }
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Sets the frame budget, e.g. 11.1ms on 90Hz displays.
+     *
+     * @param budgetNanos Frame budget in nanoseconds.
+     * @return This FrameMonitor.
+     */
+    public FrameMonitor setFrameBudgetNanos(long budgetNanos) {
+        if (budgetNanos <= 0) throw new IllegalArgumentException("Frame budget must be positive");
+        mFrameBudgetNanos = budgetNanos;
+        return this;
+    }
+
+    public long getFrameBudgetNanos() {
+        return mFrameBudgetNanos;
+    }
+
+    public FrameMonitor addListener(Listener listener) {
+        mListeners.add(listener);
+        return this;
+    }
+
+    public FrameMonitor removeListener(Listener listener) {
+        mListeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Returns the rolling Histogram for the given factory class and Phase, or `null` if nothing
+     * has been recorded for it.
+     */
+    public Histogram getHistogram(Class<?> factoryClass, Phase phase) {
+        synchronized (mHistograms) {
+            Histogram[] histograms = mHistograms.get(factoryClass);
+            return histograms == null ? null : histograms[phase.ordinal()];
+        }
+    }
+
+    /**
+     * Returns the factory classes with recorded durations.
+     */
+    public List<Class<?>> getFactoryClasses() {
+        synchronized (mHistograms) {
+            return new ArrayList<Class<?>>(mHistograms.keySet());
+        }
+    }
+
+    /**
+     * Returns the number of monitored frames in which cell work ran.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getSlowFrameCount() {
+        return mSlowFrameCount;
+    }
+
+    /**
+     * Discards all histograms and statistics.
+     */
+    public void reset() {
+        synchronized (mHistograms) {
+            mHistograms.clear();
+        }
+        mFrameCount = 0;
+        mSlowFrameCount = 0;
+    }
+
+    //==============================================================================================
+    // Recording
+    //==============================================================================================
+
+    /**
+     * Records `durationNanos` of `phase` work by the given factory.  May be called on any thread;
+     * only main-thread work is attributed to frames.
+     */
+    void record(AtlasCellFactory factory, Phase phase, long durationNanos) {
+        if (!mEnabled) return;
+        Class<?> factoryClass = factory.getClass();
+        getHistograms(factoryClass)[phase.ordinal()].add(durationNanos);
+        if (Looper.myLooper() != Looper.getMainLooper()) return;
+
+        Attribution attribution = mCurrentFrame.get(factoryClass);
+        if (attribution == null) {
+            attribution = new Attribution(factoryClass);
+            mCurrentFrame.put(factoryClass, attribution);
+        }
+        attribution.add(phase, durationNanos);
+        mCurrentFrameWorkNanos += durationNanos;
+        mIdleFrames = 0;
+        if (!mTicking) {
+            // The frame this work belongs to started before we were ticking; its interval is unknown.
+            mTicking = true;
+            mLastFrameTimeNanos = 0;
+            mTicker.post();
+        }
+    }
+
+    @Override
+    public void onParsed(AtlasCellFactory factory, long durationNanos) {
+        record(factory, Phase.PARSE, durationNanos);
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (!mEnabled) {
+            mTicking = false;
+            return;
+        }
+        long intervalNanos = (mLastFrameTimeNanos == 0) ? 0 : frameTimeNanos - mLastFrameTimeNanos;
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        if (!mCurrentFrame.isEmpty()) {
+            mFrameCount++;
+            boolean slow = mCurrentFrameWorkNanos > mFrameBudgetNanos || intervalNanos > mFrameBudgetNanos * SLOW_INTERVAL_FACTOR;
+            if (slow) {
+                mSlowFrameCount++;
+                List<Attribution> attributions = new ArrayList<Attribution>(mCurrentFrame.values());
+                Collections.sort(attributions, SLOWEST_FIRST);
+                SlowFrame frame = new SlowFrame(intervalNanos, mCurrentFrameWorkNanos, mFrameBudgetNanos, attributions);
+                if (Log.isLoggable(Log.VERBOSE)) Log.v(frame.toString());
+                for (Listener listener : mListeners) {
+                    listener.onSlowFrame(frame);
+                }
+            }
+            mCurrentFrame.clear();
+            mCurrentFrameWorkNanos = 0;
+        } else if (++mIdleFrames > IDLE_FRAMES) {
+            mTicking = false;
+            return;
+        }
+        mTicker.post();
+    }
+
+    private Histogram[] getHistograms(Class<?> factoryClass) {
+        synchronized (mHistograms) {
+            Histogram[] histograms = mHistograms.get(factoryClass);
+            if (histograms == null) {
+                histograms = new Histogram[Phase.values().length];
+                for (int i = 0; i < histograms.length; i++) {
+                    histograms[i] = new Histogram();
+                }
+                mHistograms.put(factoryClass, histograms);
+            }
+            return histograms;
+        }
+    }
+
+    private static final Comparator<Attribution> SLOWEST_FIRST = new Comparator<Attribution>() {
+        @Override
+        public int compare(Attribution lhs, Attribution rhs) {
+            long l = lhs.getTotalNanos();
+            long r = rhs.getTotalNanos();
+            return l > r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+
+    //==============================================================================================
+    // Inner classes
+    //==============================================================================================
+
+    /**
+     * Keeps Choreographer references out of FrameMonitor so it loads below API 16.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameTicker implements Choreographer.FrameCallback {
+        private final FrameMonitor mMonitor;
+
+        FrameTicker(FrameMonitor monitor) {
+            mMonitor = monitor;
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void cancel() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mMonitor.onFrame(frameTimeNanos);
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread at the start of the frame after one that ran over budget.
+         */
+        void onSlowFrame(SlowFrame frame);
+    }
+
+    /**
+     * A frame that ran over budget, and the cell work attributed to it.
+     */
+    public static class SlowFrame {
+        private final long mIntervalNanos;
+        private final long mWorkNanos;
+        private final long mBudgetNanos;
+        private final List<Attribution> mAttributions;
+
+        SlowFrame(long intervalNanos, long workNanos, long budgetNanos, List<Attribution> attributions) {
+            mIntervalNanos = intervalNanos;
+            mWorkNanos = workNanos;
+            mBudgetNanos = budgetNanos;
+            mAttributions = Collections.unmodifiableList(attributions);
+        }
+
+        /**
+         * Returns the time between this frame's start and the next, or 0 if unknown.
+         */
+        public long getIntervalNanos() {
+            return mIntervalNanos;
+        }
+
+        /**
+         * Returns the total cell work recorded in this frame.
+         */
+        public long getWorkNanos() {
+            return mWorkNanos;
+        }
+
+        public long getBudgetNanos() {
+            return mBudgetNanos;
+        }
+
+        /**
+         * Returns the factories that ran in this frame, slowest first.
+         */
+        public List<Attribution> getAttributions() {
+            return mAttributions;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder("Slow frame: ")
+                    .append(mIntervalNanos / 1000000f).append("ms interval, ")
+                    .append(mWorkNanos / 1000000f).append("ms cell work");
+            for (Attribution attribution : mAttributions) {
+                b.append("; ").append(attribution);
+            }
+            return b.toString();
+        }
+    }
+
+    /**
+     * Time one factory class spent in each Phase during a frame.
+     */
+    public static class Attribution {
+        private final Class<?> mFactoryClass;
+        private final long[] mNanos = new long[Phase.values().length];
+        private final int[] mCounts = new int[Phase.values().length];
+
+        Attribution(Class<?> factoryClass) {
+            mFactoryClass = factoryClass;
+        }
+
+        void add(Phase phase, long nanos) {
+            mNanos[phase.ordinal()] += nanos;
+            mCounts[phase.ordinal()]++;
+        }
+
+        public Class<?> getFactoryClass() {
+            return mFactoryClass;
+        }
+
+        public long getNanos(Phase phase) {
+            return mNanos[phase.ordinal()];
+        }
+
+        public int getCount(Phase phase) {
+            return mCounts[phase.ordinal()];
+        }
+
+        public long getTotalNanos() {
+            long total = 0;
+            for (long nanos : mNanos) {
+                total += nanos;
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder(mFactoryClass.getSimpleName());
+            for (Phase phase : Phase.values()) {
+                if (mCounts[phase.ordinal()] == 0) continue;
+                b.append(' ').append(phase.name().toLowerCase()).append(' ')
+                        .append(mCounts[phase.ordinal()]).append("x/")
+                        .append(mNanos[phase.ordinal()] / 1000000f).append("ms");
+            }
+            return b.toString();
+        }
+    }
+
+    /**
+     * A rolling histogram of the most recent durations, in power-of-two millisecond buckets:
+     * under 1ms, 1-2ms, 2-4ms, and so on, with the last bucket open-ended.
+     */
+    public static class Histogram {
+        public static final int BUCKET_COUNT = 8;
+
+        // Samples kept; older samples roll out of the counts.
+        private static final int WINDOW = 512;
+
+        private final byte[] mSamples = new byte[WINDOW];
+        private final int[] mCounts = new int[BUCKET_COUNT];
+        private int mNext = 0;
+        private int mSize = 0;
+        private long mTotal = 0;
+
+        synchronized void add(long nanos) {
+            int bucket = getBucket(nanos);
+            if (mSize == WINDOW) {
+                mCounts[mSamples[mNext]]--;
+            } else {
+                mSize++;
+            }
+            mSamples[mNext] = (byte) bucket;
+            mCounts[bucket]++;
+            mNext = (mNext + 1) % WINDOW;
+            mTotal++;
+        }
+
+        private static int getBucket(long nanos) {
+            long millis = nanos / 1000000L;
+            int bucket = 0;
+            while (millis > 0 && bucket < BUCKET_COUNT - 1) {
+                millis >>= 1;
+                bucket++;
+            }
+            return bucket;
+        }
+
+        /**
+         * Returns the upper bound of the given bucket in milliseconds, or Long.MAX_VALUE for the
+         * last bucket.
+         */
+        public static long getBucketUpperBoundMillis(int bucket) {
+            return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        /**
+         * Returns sample counts per bucket within the rolling window.
+         */
+        public synchronized int[] getCounts() {
+            return mCounts.clone();
+        }
+
+        /**
+         * Returns the number of samples in the rolling window.
+         */
+        public synchronized int getSize() {
+            return mSize;
+        }
+
+        /**
+         * Returns the number of samples ever recorded.
+         */
+        public synchronized long getTotalCount() {
+            return mTotal;
+        }
+
+        /**
+         * Returns the upper bound in milliseconds of the bucket holding the given percentile of
+         * the rolling window, or 0 if empty.
+         *
+         * @param percentile Percentile between 0 and 100.
+         */
+        public synchronized long getPercentileMillis(float percentile) {
+            if (mSize == 0) return 0;
+            int target = (int) Math.ceil(mSize * percentile / 100f);
+            int seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += mCounts[bucket];
+                if (seen >= target) return getBucketUpperBoundMillis(bucket);
+            }
+            return getBucketUpperBoundMillis(BUCKET_COUNT - 1);
+        }
+    }
+}
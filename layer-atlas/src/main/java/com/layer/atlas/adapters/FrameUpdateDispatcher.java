@@ -0,0 +1,397 @@
+package com.layer.atlas.adapters;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FrameUpdateDispatcher routes an adapter's change notifications to its RecyclerView.  When frame
+ * batching is disabled (the default), notifications pass straight through.  When enabled,
+ * notifications are collected until the next frame, adjacent ranges are merged, and one compacted
+ * set of notifications is dispatched per Choreographer frame (or per main-thread turn before API
+ * 16).
+ *
+ * While notifications are pending, the RecyclerView still reflects the previously dispatched
+ * state.  Adapters report that state through getItemCount(int) and translate the positions
+ * RecyclerView binds with toCurrentPosition(int).  All methods must be called on the main thread.
+ */
+public class FrameUpdateDispatcher {
+    private static final int OP_CHANGE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_REMOVE = 2;
+    private static final int OP_MOVE = 3;
+
+    private final RecyclerView.Adapter mAdapter;
+    private final FrameScheduler mScheduler;
+
+    private boolean mEnabled = false;
+    private boolean mScheduled = false;
+    private boolean mDataSetChanged = false;
+    private final List<Op> mOps = new ArrayList<Op>();
+    private final List<Runnable> mAfterDispatch = new ArrayList<Runnable>();
+
+    // Item count last reported to the RecyclerView, or -1 if unknown.
+    private int mPublishedCount = -1;
+
+    // Statistics
+    private long mCallbackCount = 0;
+    private long mNotificationCount = 0;
+    private long mFrameCount = 0;
+
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            dispatch();
+        }
+    };
+
+    public FrameUpdateDispatcher(RecyclerView.Adapter adapter) {
+        mAdapter = adapter;
+        mScheduler = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) ? new ChoreographerScheduler(mDispatchRunnable) : new HandlerScheduler(mDispatchRunnable);
+    }
+
+    /**
+     * Enables or disables per-frame batching.  Disabling dispatches pending notifications now.
+     *
+     * @param enabled `true` to batch notifications per frame.
+     */
+    public void setEnabled(boolean enabled) {
+        if (mEnabled == enabled) return;
+        if (!enabled) dispatch();
+        mEnabled = enabled;
+        mPublishedCount = -1;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Returns `true` if notifications are waiting for the next frame.
+     */
+    public boolean hasPending() {
+        return mDataSetChanged || !mOps.isEmpty();
+    }
+
+    //==============================================================================================
+    // Notifications
+    //==============================================================================================
+
+    public void notifyDataSetChanged() {
+        mCallbackCount++;
+        if (!mEnabled) {
+            send(OP_CHANGE, -1, -1);
+            return;
+        }
+        mOps.clear();
+        mDataSetChanged = true;
+        schedule();
+    }
+
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        enqueue(OP_CHANGE, positionStart, itemCount);
+    }
+
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        enqueue(OP_INSERT, positionStart, itemCount);
+    }
+
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        enqueue(OP_REMOVE, positionStart, itemCount);
+    }
+
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        enqueue(OP_MOVE, fromPosition, toPosition);
+    }
+
+    /**
+     * Runs the given Runnable once pending notifications have been dispatched, or immediately if
+     * none are pending.
+     */
+    public void runAfterDispatch(Runnable runnable) {
+        if (!hasPending()) {
+            runnable.run();
+            return;
+        }
+        mAfterDispatch.add(runnable);
+    }
+
+    /**
+     * Dispatches all pending notifications now.
+     */
+    public void dispatch() {
+        if (mScheduled) {
+            mScheduler.cancel();
+            mScheduled = false;
+        }
+        if (!hasPending()) return;
+        mFrameCount++;
+        if (mDataSetChanged) {
+            mDataSetChanged = false;
+            mOps.clear();
+            send(OP_CHANGE, -1, -1);
+        } else {
+            // Sending may re-enter through adapter callbacks; work from a snapshot.
+            Op[] ops = mOps.toArray(new Op[mOps.size()]);
+            mOps.clear();
+            for (Op op : ops) {
+                send(op.type, op.start, op.count);
+            }
+        }
+        if (mAfterDispatch.isEmpty()) return;
+        Runnable[] runnables = mAfterDispatch.toArray(new Runnable[mAfterDispatch.size()]);
+        mAfterDispatch.clear();
+        for (Runnable runnable : runnables) {
+            runnable.run();
+        }
+    }
+
+    //==============================================================================================
+    // Published state
+    //==============================================================================================
+
+    /**
+     * Returns the item count the RecyclerView should see: `currentCount` when nothing is pending,
+     * or the count as of the last dispatched frame otherwise.
+     *
+     * @param currentCount The adapter's current item count.
+     * @return The item count to report from getItemCount().
+     */
+    public int getItemCount(int currentCount) {
+        if (!hasPending()) {
+            mPublishedCount = currentCount;
+            return currentCount;
+        }
+        return (mPublishedCount < 0) ? currentCount : mPublishedCount;
+    }
+
+    /**
+     * Translates a position the RecyclerView knows about into the adapter's current positions by
+     * replaying pending notifications.
+     *
+     * @param position Position from the last dispatched frame.
+     * @return The current position, or -1 if the item has since been removed.
+     */
+    public int toCurrentPosition(int position) {
+        if (mDataSetChanged) return position;
+        for (int i = 0, size = mOps.size(); i < size && position >= 0; i++) {
+            Op op = mOps.get(i);
+            switch (op.type) {
+                case OP_INSERT:
+                    if (position >= op.start) position += op.count;
+                    break;
+                case OP_REMOVE:
+                    if (position >= op.start + op.count) {
+                        position -= op.count;
+                    } else if (position >= op.start) {
+                        position = -1;
+                    }
+                    break;
+                case OP_MOVE:
+                    if (position == op.start) {
+                        position = op.count;
+                    } else if (op.start < op.count && position > op.start && position <= op.count) {
+                        position--;
+                    } else if (op.start > op.count && position >= op.count && position < op.start) {
+                        position++;
+                    }
+                    break;
+            }
+        }
+        return position;
+    }
+
+    //==============================================================================================
+    // Statistics
+    //==============================================================================================
+
+    /**
+     * Returns the number of notifications requested by the adapter.
+     */
+    public long getCallbackCount() {
+        return mCallbackCount;
+    }
+
+    /**
+     * Returns the number of notifications actually sent to the RecyclerView.
+     */
+    public long getNotificationCount() {
+        return mNotificationCount;
+    }
+
+    /**
+     * Returns the number of batches dispatched.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns requested notifications per sent notification; 1.0 means nothing was coalesced.
+     */
+    public float getCoalescingRatio() {
+        return (mNotificationCount == 0) ? 1f : (float) mCallbackCount / (float) mNotificationCount;
+    }
+
+    public void resetStatistics() {
+        mCallbackCount = 0;
+        mNotificationCount = 0;
+        mFrameCount = 0;
+    }
+
+    //==============================================================================================
+    // Internals
+    //==============================================================================================
+
+    private void enqueue(int type, int start, int count) {
+        mCallbackCount++;
+        if (!mEnabled) {
+            send(type, start, count);
+            return;
+        }
+        if (mDataSetChanged) return;
+        if (!merge(type, start, count)) mOps.add(new Op(type, start, count));
+        schedule();
+    }
+
+    /**
+     * Merges the given notification into the last pending one when they describe adjacent or
+     * overlapping ranges.  Returns `true` if merged.
+     */
+    private boolean merge(int type, int start, int count) {
+        if (mOps.isEmpty()) return false;
+        Op last = mOps.get(mOps.size() - 1);
+        switch (type) {
+            case OP_CHANGE:
+                if (last.type == OP_CHANGE && start <= last.start + last.count && start + count >= last.start) {
+                    int end = Math.max(last.start + last.count, start + count);
+                    last.start = Math.min(last.start, start);
+                    last.count = end - last.start;
+                    return true;
+                }
+                // Freshly inserted items are bound anyway.
+                return last.type == OP_INSERT && start >= last.start && start + count <= last.start + last.count;
+            case OP_INSERT:
+                if (last.type == OP_INSERT && start >= last.start && start <= last.start + last.count) {
+                    last.count += count;
+                    return true;
+                }
+                return false;
+            case OP_REMOVE:
+                if (last.type != OP_REMOVE) return false;
+                if (start == last.start) {
+                    last.count += count;
+                    return true;
+                }
+                if (start + count == last.start) {
+                    last.start = start;
+                    last.count += count;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void send(int type, int start, int count) {
+        mNotificationCount++;
+        if (start < 0) {
+            mPublishedCount = -1;
+            mAdapter.notifyDataSetChanged();
+            return;
+        }
+        switch (type) {
+            case OP_CHANGE:
+                mAdapter.notifyItemRangeChanged(start, count);
+                break;
+            case OP_INSERT:
+                if (mPublishedCount >= 0) mPublishedCount += count;
+                mAdapter.notifyItemRangeInserted(start, count);
+                break;
+            case OP_REMOVE:
+                if (mPublishedCount >= 0) mPublishedCount -= count;
+                mAdapter.notifyItemRangeRemoved(start, count);
+                break;
+            case OP_MOVE:
+                mAdapter.notifyItemMoved(start, count);
+                break;
+        }
+    }
+
+    private void schedule() {
+        if (mScheduled) return;
+        mScheduled = true;
+        mScheduler.schedule();
+    }
+
+    private static class Op {
+        final int type;
+        int start;
+
+        // Item count, or the destination position for moves.
+        int count;
+
+        Op(int type, int start, int count) {
+            this.type = type;
+            this.start = start;
+            this.count = count;
+        }
+    }
+
+    private interface FrameScheduler {
+        void schedule();
+
+        void cancel();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ChoreographerScheduler implements FrameScheduler, Choreographer.FrameCallback {
+        private final Runnable mRunnable;
+
+        ChoreographerScheduler(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void schedule() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void cancel() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mRunnable.run();
+        }
+    }
+
+    private static class HandlerScheduler implements FrameScheduler {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final Runnable mRunnable;
+
+        HandlerScheduler(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void schedule() {
+            mHandler.post(mRunnable);
+        }
+
+        @Override
+        public void cancel() {
+            mHandler.removeCallbacks(mRunnable);
+        }
+    }
+}
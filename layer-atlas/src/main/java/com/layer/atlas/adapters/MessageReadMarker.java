@@ -0,0 +1,133 @@
+package com.layer.atlas.adapters;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+
+import com.layer.sdk.messaging.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessageReadMarker batches `Message.markAsRead()` calls for Messages as they become visible.
+ * Messages are de-duplicated by ID and marked together once scrolling settles, or after a debounce
+ * window while the list is idle, instead of writing through the SDK on every bind.  All methods
+ * must be called on the main thread.
+ */
+public class MessageReadMarker {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+    // Recently marked IDs, so rebinds of the same rows do not queue them again.
+    private static final int MARKED_CACHE_SIZE = 2048;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Map<Uri, Message> mPending = new LinkedHashMap<Uri, Message>();
+    private final Map<Uri, Boolean> mMarked = new LinkedHashMap<Uri, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Uri, Boolean> eldest) {
+            return size() > MARKED_CACHE_SIZE;
+        }
+    };
+
+    private long mDebounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private boolean mScrolling = false;
+    private boolean mFlushScheduled = false;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled = false;
+            flush();
+        }
+    };
+
+    /**
+     * Sets how long visible Messages are collected before being marked while the list is idle.
+     *
+     * @param debounceMillis Debounce window in milliseconds.
+     * @return This MessageReadMarker.
+     */
+    public MessageReadMarker setDebounceMillis(long debounceMillis) {
+        mDebounceMillis = debounceMillis;
+        return this;
+    }
+
+    /**
+     * Queues a visible Message to be marked as read with the next batch.
+     *
+     * @param message Message that became visible.
+     */
+    public void markVisible(Message message) {
+        Uri id = message.getId();
+        if (mPending.containsKey(id) || mMarked.containsKey(id)) return;
+        mPending.put(id, message);
+        scheduleFlush();
+    }
+
+    /**
+     * Marks every unread Message from `position` back to the start of the adapter, stopping at
+     * the first Message that is already read, since Messages before it were read earlier.  Useful
+     * as a fast path when a conversation is opened.
+     *
+     * @param adapter  Adapter to read Messages from.
+     * @param position Last position to mark.
+     * @param userId   Authenticated user ID; Messages sent by this user are skipped.
+     */
+    public void markAllUpTo(AtlasBaseAdapter<Message> adapter, int position, String userId) {
+        for (int i = position; i >= 0; i--) {
+            Message message = adapter.getItem(i);
+            if (message == null || userId.equals(message.getSender().getUserId())) continue;
+            if (!message.isUnread()) break;
+            markVisible(message);
+        }
+        flush();
+    }
+
+    /**
+     * Forwards RecyclerView scroll state.  Batches are held while scrolling and flushed once the
+     * list settles.
+     *
+     * @param newState Scroll state of the RecyclerView.
+     */
+    public void onScrollStateChanged(int newState) {
+        mScrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+        if (!mScrolling) flush();
+    }
+
+    /**
+     * Immediately marks all pending Messages as read.
+     */
+    public void flush() {
+        if (mFlushScheduled) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mFlushScheduled = false;
+        }
+        if (mPending.isEmpty()) return;
+        List<Message> batch = new ArrayList<Message>(mPending.values());
+        mPending.clear();
+        for (Message message : batch) {
+            mMarked.put(message.getId(), Boolean.TRUE);
+            if (message.isUnread()) message.markAsRead();
+        }
+    }
+
+    /**
+     * Drops pending and remembered Messages, e.g. when the adapter's Query changes.
+     */
+    public void reset() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        mPending.clear();
+        mMarked.clear();
+    }
+
+    private void scheduleFlush() {
+        if (mScrolling || mFlushScheduled) return;
+        mFlushScheduled = true;
+        mHandler.postDelayed(mFlushRunnable, mDebounceMillis);
+    }
+}
@@ -0,0 +1,86 @@
+package com.layer.atlas.adapters;
+
+import com.layer.atlas.provider.Participant;
+import com.layer.atlas.provider.ParticipantProvider;
+import com.layer.atlas.util.DateLabelFormatter;
+import com.layer.sdk.messaging.Actor;
+import com.layer.sdk.messaging.Message;
+
+/**
+ * MessageRowModel holds the adapter-level values rendered around a Message cell: time bar labels,
+ * the sender name, and conversation-dependent layout flags.  Models are immutable and are built
+ * off the main thread while the query controller pre-processes Messages, so binding a row only
+ * assigns precomputed values.
+ */
+final class MessageRowModel {
+    // True if the authenticated user sent this Message.
+    public final boolean isMe;
+
+    // True if the Message belongs to a conversation between exactly two participants.
+    public final boolean isOneOnOne;
+
+    // Time bar labels, e.g. "Yesterday" and " 4:20 PM".
+    public final String timeBarDay;
+    public final String timeBarTime;
+
+    // Sender display name, or `null` if the sender could not be resolved yet.
+    public final String senderName;
+
+    // DateLabelFormatter generation the labels were produced in, or -1 if they are always stale.
+    private final int mLabelGeneration;
+
+    private MessageRowModel(boolean isMe, boolean isOneOnOne, String timeBarDay, String timeBarTime, String senderName, int labelGeneration) {
+        this.isMe = isMe;
+        this.isOneOnOne = isOneOnOne;
+        this.timeBarDay = timeBarDay;
+        this.timeBarTime = timeBarTime;
+        this.senderName = senderName;
+        mLabelGeneration = labelGeneration;
+    }
+
+    /**
+     * Returns `true` if this model's labels are out of date, e.g. "Today" after midnight.
+     */
+    public boolean isExpired(DateLabelFormatter labels) {
+        return mLabelGeneration != labels.getGeneration();
+    }
+
+    /**
+     * Builds a MessageRowModel for the given Message.  Safe to call from any thread.
+     *
+     * @param labels              DateLabelFormatter producing the time bar labels.
+     * @param userId              The authenticated user ID.
+     * @param participantProvider ParticipantProvider for resolving sender names.
+     * @param message             Message to build a model for.
+     * @return A new MessageRowModel.
+     */
+    public static MessageRowModel create(DateLabelFormatter labels, String userId, ParticipantProvider participantProvider, Message message) {
+        Actor sender = message.getSender();
+        boolean isMe = userId.equals(sender.getUserId());
+        boolean oneOnOne = message.getConversation().getParticipants().size() == 2;
+
+        // Read the generation first, so labels built across a rollover are already stale.
+        int generation = labels.getGeneration();
+        long sentAt;
+        if (message.getSentAt() == null) {
+            // Unsent Messages are labelled with the current time until they are sent.
+            sentAt = System.currentTimeMillis();
+            generation = -1;
+        } else {
+            sentAt = message.getSentAt().getTime();
+        }
+        String day = labels.formatDay(sentAt);
+        String time = " " + labels.formatTime(sentAt);
+
+        String senderName = null;
+        if (!isMe) {
+            if (sender.getName() != null) {
+                senderName = sender.getName();
+            } else {
+                Participant participant = participantProvider.getParticipant(sender.getUserId());
+                if (participant != null) senderName = participant.getName();
+            }
+        }
+        return new MessageRowModel(isMe, oneOnOne, day, time, senderName, generation);
+    }
+}
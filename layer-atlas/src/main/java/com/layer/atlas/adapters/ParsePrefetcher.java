@@ -0,0 +1,311 @@
+package com.layer.atlas.adapters;
+
+import android.net.Uri;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ParsedContentDiskStore;
+import com.layer.atlas.util.Log;
+import com.layer.sdk.messaging.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParsePrefetcher parses Messages ahead of the visible range of an AtlasMessagesRecyclerView, so
+ * AtlasCellFactory.getParsedContent() finds parsed content when binding instead of parsing on the
+ * main thread.  The look-ahead follows the scroll direction and grows with scroll velocity.
+ * Parsing runs on a bounded single-thread executor, after one batched read of persisted content
+ * from the ParsedContentDiskStore, and queued work for Messages that leave the look-ahead window
+ * is cancelled.  Scroll updates must be delivered on the main thread.
+ */
+public class ParsePrefetcher {
+    public static final int DEFAULT_MIN_DISTANCE = 4;
+    public static final int DEFAULT_MAX_DISTANCE = 24;
+
+    // How far ahead, in time, the look-ahead should cover at the current velocity.
+    private static final long LOOK_AHEAD_MILLIS = 500;
+
+    // Weight of the newest sample in the smoothed velocity.
+    private static final float VELOCITY_SMOOTHING = 0.3f;
+
+    private final AtlasMessagesAdapter mAdapter;
+    private final ConcurrentHashMap<Uri, Task> mTasks = new ConcurrentHashMap<Uri, Task>();
+    private ThreadPoolExecutor mExecutor;
+
+    private boolean mEnabled = true;
+    private int mMinDistance = DEFAULT_MIN_DISTANCE;
+    private int mMaxDistance = DEFAULT_MAX_DISTANCE;
+
+    // Scroll tracking, in pixels per millisecond
+    private long mLastScrollTime = 0;
+    private float mVelocity = 0;
+
+    // Look-ahead window resolved by the previous prefetch, in adapter positions.
+    private int mRangeStart = -1;
+    private int mRangeEnd = -1;
+
+    // Statistics
+    private long mScheduledCount = 0;
+    private long mCancelledCount = 0;
+
+    ParsePrefetcher(AtlasMessagesAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    /**
+     * Enables or disables prefetching.  Disabling cancels queued work.  Enabled by default.
+     *
+     * @param enabled `true` to prefetch while scrolling.
+     * @return This ParsePrefetcher.
+     */
+    public ParsePrefetcher setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) cancelAll();
+        return this;
+    }
+
+    /**
+     * Sets how many Messages beyond the visible range are parsed: `minDistance` while scrolling
+     * slowly, growing with velocity up to `maxDistance`.
+     *
+     * @param minDistance Minimum number of Messages to parse ahead.
+     * @param maxDistance Maximum number of Messages to parse ahead.
+     * @return This ParsePrefetcher.
+     */
+    public ParsePrefetcher setDistance(int minDistance, int maxDistance) {
+        if (minDistance < 0 || maxDistance < minDistance) {
+            throw new IllegalArgumentException("Invalid prefetch distance " + minDistance + ".." + maxDistance);
+        }
+        mMinDistance = minDistance;
+        mMaxDistance = maxDistance;
+        if (mExecutor != null) {
+            // The queue is sized for the old maximum; recreate the executor on next use.
+            cancelAll();
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+        return this;
+    }
+
+    /**
+     * Updates the look-ahead window after a scroll.
+     *
+     * @param firstVisible   First visible adapter position.
+     * @param lastVisible    Last visible adapter position.
+     * @param dy             Vertical scroll delta in pixels; positive when scrolling towards the end.
+     * @param viewportHeight Height of the RecyclerView in pixels.
+     */
+    public void onScrolled(int firstVisible, int lastVisible, int dy, int viewportHeight) {
+        if (!mEnabled || firstVisible < 0 || lastVisible < firstVisible || dy == 0) return;
+
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - mLastScrollTime;
+        mLastScrollTime = now;
+        float sample = (elapsed > 0 && elapsed < LOOK_AHEAD_MILLIS) ? (float) dy / elapsed : 0;
+        mVelocity += VELOCITY_SMOOTHING * (sample - mVelocity);
+
+        // Convert the distance covered within the look-ahead time into rows.
+        int visibleCount = lastVisible - firstVisible + 1;
+        float rowHeight = Math.max(1f, (float) viewportHeight / visibleCount);
+        int rows = (int) (Math.abs(mVelocity) * LOOK_AHEAD_MILLIS / rowHeight);
+        int distance = Math.max(mMinDistance, Math.min(mMaxDistance, rows));
+
+        int start, end;
+        if (dy > 0) {
+            start = lastVisible + 1;
+            end = lastVisible + distance;
+        } else {
+            start = firstVisible - distance;
+            end = firstVisible - 1;
+        }
+        prefetch(Math.max(0, start), end);
+    }
+
+    /**
+     * Cancels all queued prefetch work.
+     */
+    public void cancelAll() {
+        for (Task task : mTasks.values()) {
+            cancel(task);
+        }
+        onPositionsChanged();
+    }
+
+    /**
+     * Forgets the previous look-ahead window after adapter positions shift, so the next scroll
+     * resolves its whole window again.
+     */
+    void onPositionsChanged() {
+        mRangeStart = -1;
+        mRangeEnd = -1;
+    }
+
+    /**
+     * Returns the number of Messages queued for prefetching.
+     */
+    public long getScheduledCount() {
+        return mScheduledCount;
+    }
+
+    /**
+     * Returns the number of queued prefetches cancelled after leaving the look-ahead window.
+     * Prefetches already running when they leave the window complete and are not counted.
+     */
+    public long getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    /**
+     * Returns how often registered AtlasCellFactories still had to parse synchronously on the
+     * main thread.
+     *
+     * @see AtlasCellFactory#getMainThreadParseCount()
+     */
+    public long getMainThreadParseCount() {
+        long count = 0;
+        for (AtlasCellFactory factory : mAdapter.getCellFactories()) {
+            count += factory.getMainThreadParseCount();
+        }
+        return count;
+    }
+
+    private void prefetch(int start, int end) {
+        // Cancel work that scrolled out of range.
+        for (Task task : mTasks.values()) {
+            if (task.mPosition < start || task.mPosition > end) cancel(task);
+        }
+
+        // Only resolve positions new to this window; the rest were queued or parsed last time.
+        int previousStart = mRangeStart;
+        int previousEnd = mRangeEnd;
+        mRangeStart = start;
+        mRangeEnd = end;
+
+        List<Task> tasks = new ArrayList<Task>();
+        Map<AtlasCellFactory, List<Message>> batches = new HashMap<AtlasCellFactory, List<Message>>();
+        for (int position = start; position <= end; position++) {
+            if (position >= previousStart && position <= previousEnd) continue;
+            Message message = mAdapter.getPrefetchItem(position);
+            if (message == null) continue;
+            Uri id = message.getId();
+            Task existing = mTasks.get(id);
+            if (existing != null) {
+                existing.mPosition = position;
+                continue;
+            }
+            AtlasCellFactory factory = mAdapter.getCellFactory(message);
+            if (factory == null || factory.peekParsedContent(message) != null) continue;
+
+            tasks.add(new Task(id, message, position));
+            List<Message> batch = batches.get(factory);
+            if (batch == null) {
+                batch = new ArrayList<Message>();
+                batches.put(factory, batch);
+            }
+            batch.add(message);
+        }
+        if (tasks.isEmpty()) return;
+
+        ThreadPoolExecutor executor = getExecutor();
+        if (ParsedContentDiskStore.getInstance() != null) {
+            // Load persisted content for the whole window before parsing any of it.
+            try {
+                executor.execute(new WarmTask(batches));
+            } catch (RejectedExecutionException e) {
+                if (Log.isLoggable(Log.VERBOSE)) Log.v("Prefetch queue full; parsing without warming");
+            }
+        }
+        for (Task task : tasks) {
+            mTasks.put(task.mId, task);
+            try {
+                executor.execute(task);
+                mScheduledCount++;
+            } catch (RejectedExecutionException e) {
+                mTasks.remove(task.mId);
+                if (Log.isLoggable(Log.VERBOSE)) Log.v("Prefetch queue full at position " + task.mPosition);
+                // Retry the rest of the window on the next scroll.
+                onPositionsChanged();
+                break;
+            }
+        }
+    }
+
+    private void cancel(Task task) {
+        mTasks.remove(task.mId, task);
+        // Only queued tasks can be removed; running tasks are left to complete.
+        if (mExecutor != null && mExecutor.remove(task)) {
+            task.cancel(false);
+            mCancelledCount++;
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, mMaxDistance) + 1), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "AtlasParsePrefetcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+        return mExecutor;
+    }
+
+    private static class WarmTask implements Runnable {
+        private final Map<AtlasCellFactory, List<Message>> mBatches;
+
+        WarmTask(Map<AtlasCellFactory, List<Message>> batches) {
+            mBatches = batches;
+        }
+
+        @Override
+        public void run() {
+            for (Map.Entry<AtlasCellFactory, List<Message>> batch : mBatches.entrySet()) {
+                batch.getKey().warmParsedContent(batch.getValue());
+            }
+        }
+    }
+
+    private class Task extends FutureTask<Void> {
+        final Uri mId;
+
+        // Updated on the main thread as the window moves.
+        volatile int mPosition;
+
+        Task(Uri id, final Message message, int position) {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                    mAdapter.preProcess(message);
+                }
+            }, null);
+            mId = id;
+            mPosition = position;
+        }
+
+        @Override
+        protected void done() {
+            mTasks.remove(mId, this);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.layer.atlas.adapters;
+
+/**
+ * ReceiptIndex tracks the latest positions of the authenticated user's Messages that have been
+ * read or delivered to another participant.  After an initial scan, the index is maintained from
+ * the ranges reported by the query controller: inserts and changes only inspect the affected
+ * range, and the list is only scanned backwards again when the Message holding a receipt loses it
+ * or is removed.  Rows whose receipt display changes are reported through the Callback.
+ */
+final class ReceiptIndex {
+    public static final int READ = 1;
+    public static final int DELIVERED = 1 << 1;
+
+    private static final int[] STATUSES = {READ, DELIVERED};
+
+    private final Source mSource;
+    private final Callback mCallback;
+
+    // Latest positions indexed parallel to STATUSES, or -1 for none.
+    private final int[] mPositions = {-1, -1};
+    private final int[] mPrevious = {-1, -1};
+
+    public ReceiptIndex(Source source, Callback callback) {
+        mSource = source;
+        mCallback = callback;
+    }
+
+    public int getReadPosition() {
+        return mPositions[0];
+    }
+
+    public int getDeliveredPosition() {
+        return mPositions[1];
+    }
+
+    /**
+     * Rebuilds the index by scanning backwards from the end of the list.  Used when the whole
+     * data set changes; the caller is expected to rebind every row, so no rows are reported.
+     */
+    public void reset() {
+        mPositions[0] = -1;
+        mPositions[1] = -1;
+        int remaining = READ | DELIVERED;
+        for (int position = mSource.getCount() - 1; position >= 0 && remaining != 0; position--) {
+            int receipts = mSource.getReceipts(position) & remaining;
+            if (receipts == 0) continue;
+            for (int i = 0; i < STATUSES.length; i++) {
+                if ((receipts & STATUSES[i]) != 0) mPositions[i] = position;
+            }
+            remaining &= ~receipts;
+        }
+    }
+
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        begin();
+        int end = positionStart + itemCount;
+        for (int i = 0; i < STATUSES.length; i++) {
+            int latest = findLatest(STATUSES[i], end - 1, positionStart);
+            int current = mPositions[i];
+            if (latest > current) {
+                mPositions[i] = latest;
+            } else if (current >= positionStart && current < end && latest < current) {
+                // The Message holding this receipt no longer has it.
+                mPositions[i] = (latest >= 0) ? latest : findLatest(STATUSES[i], positionStart - 1, 0);
+            }
+        }
+        commit();
+    }
+
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (mPositions[i] >= positionStart) mPositions[i] += itemCount;
+        }
+        begin();
+        int end = positionStart + itemCount;
+        for (int i = 0; i < STATUSES.length; i++) {
+            int latest = findLatest(STATUSES[i], end - 1, positionStart);
+            if (latest > mPositions[i]) mPositions[i] = latest;
+        }
+        commit();
+    }
+
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        int end = positionStart + itemCount;
+        boolean[] lost = new boolean[STATUSES.length];
+        for (int i = 0; i < STATUSES.length; i++) {
+            int current = mPositions[i];
+            if (current >= end) {
+                mPositions[i] = current - itemCount;
+            } else if (current >= positionStart) {
+                mPositions[i] = -1;
+                lost[i] = true;
+            }
+        }
+        begin();
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (lost[i]) mPositions[i] = findLatest(STATUSES[i], positionStart - 1, 0);
+        }
+        commit();
+    }
+
+    public void onItemMoved(int fromPosition, int toPosition) {
+        boolean[] moved = new boolean[STATUSES.length];
+        for (int i = 0; i < STATUSES.length; i++) {
+            int current = mPositions[i];
+            if (current == fromPosition) {
+                mPositions[i] = toPosition;
+                moved[i] = true;
+            } else if (fromPosition < toPosition && current > fromPosition && current <= toPosition) {
+                mPositions[i] = current - 1;
+            } else if (fromPosition > toPosition && current >= toPosition && current < fromPosition) {
+                mPositions[i] = current + 1;
+            }
+        }
+        begin();
+        int top = Math.max(fromPosition, toPosition);
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (moved[i]) {
+                // Messages shifted around the moved receipt may now be the latest.
+                mPositions[i] = findLatest(STATUSES[i], top, 0);
+            } else {
+                int latest = findLatest(STATUSES[i], toPosition, toPosition);
+                if (latest > mPositions[i]) mPositions[i] = latest;
+            }
+        }
+        commit();
+    }
+
+    private void begin() {
+        System.arraycopy(mPositions, 0, mPrevious, 0, mPositions.length);
+    }
+
+    /**
+     * Reports rows whose receipt display changed since begin(), each at most once.
+     */
+    private void commit() {
+        int count = mSource.getCount();
+        for (int i = 0; i < mPositions.length; i++) {
+            if (mPrevious[i] == mPositions[i]) continue;
+            report(mPrevious[i], i, count);
+            report(mPositions[i], i, count);
+        }
+    }
+
+    private void report(int position, int index, int count) {
+        if (position < 0 || position >= count) return;
+        // Skip rows already reported for an earlier status.
+        for (int i = 0; i < index; i++) {
+            if (mPrevious[i] != mPositions[i] && (mPrevious[i] == position || mPositions[i] == position)) return;
+        }
+        mCallback.onReceiptRowChanged(position);
+    }
+
+    /**
+     * Returns the highest position between `from` and `to` (inclusive, scanning downwards) whose
+     * Message carries the given status, or -1 if none does.
+     */
+    private int findLatest(int status, int from, int to) {
+        for (int position = Math.min(from, mSource.getCount() - 1); position >= to; position--) {
+            if ((mSource.getReceipts(position) & status) != 0) return position;
+        }
+        return -1;
+    }
+
+    /**
+     * Provides receipt state for the Messages in the indexed list.
+     */
+    interface Source {
+        int getCount();
+
+        /**
+         * Returns a bitmask of READ and DELIVERED for the authenticated user's Message at the
+         * given position, or 0 for Messages sent by others.
+         */
+        int getReceipts(int position);
+    }
+
+    interface Callback {
+        void onReceiptRowChanged(int position);
+    }
+}
@@ -0,0 +1,43 @@
+package com.layer.atlas.adapters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StableIdTable interns keys (typically Layer Uris) into RecyclerView item IDs.  IDs are handed
+ * out sequentially and never reused for the lifetime of the table, so unlike hashing a Uri down
+ * to a `long`, two items can never collide.  RESERVED_ID is never assigned and is available for
+ * synthetic rows such as footers.  Must be used from a single thread.
+ *
+ * @param <K> Key type.
+ */
+final class StableIdTable<K> {
+    public static final long RESERVED_ID = 0;
+
+    private final Map<K, Long> mIds = new HashMap<K, Long>();
+    private long mNextId = RESERVED_ID + 1;
+
+    /**
+     * Returns the ID for the given key, assigning a new one on first use.
+     */
+    public long getId(K key) {
+        Long id = mIds.get(key);
+        if (id == null) {
+            id = mNextId++;
+            mIds.put(key, id);
+        }
+        return id;
+    }
+
+    public int size() {
+        return mIds.size();
+    }
+
+    /**
+     * Forgets all interned keys.  IDs keep counting up, so keys interned afterwards never receive
+     * an ID still held by a recycled View.
+     */
+    public void clear() {
+        mIds.clear();
+    }
+}
@@ -0,0 +1,210 @@
+package com.layer.atlas.adapters;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * ViewHolderPrewarmer inflates CellViewHolders while the main thread is idle and places them in
+ * the RecyclerView's RecycledViewPool, so the first image or location Message scrolled into view
+ * binds a pooled holder instead of inflating one mid-scroll.  Each idle pass inflates a single
+ * holder to keep idle work short.
+ *
+ * Pool sizes can be set per view type, or adapted to the conversation's content mix: view types
+ * bound more often get proportionally more pooled holders.  All methods must be called on the
+ * main thread.
+ */
+public class ViewHolderPrewarmer {
+    // RecyclerView's default RecycledViewPool size per view type.
+    public static final int DEFAULT_POOL_SIZE = 5;
+
+    // Adaptive sizing bounds and cadence
+    private static final int MIN_ADAPTIVE_POOL_SIZE = 2;
+    private static final int MAX_ADAPTIVE_POOL_SIZE = 16;
+    private static final int ADAPT_INTERVAL_BINDS = 32;
+
+    private final AtlasMessagesAdapter mAdapter;
+    private RecyclerView mRecyclerView;
+
+    // Pending view types to inflate, one entry per holder
+    private final Queue<Integer> mPending = new ArrayDeque<Integer>();
+
+    // Current pool sizes, and sizes set explicitly which adaptive sizing leaves alone
+    private final SparseIntArray mPoolSizes = new SparseIntArray();
+    private final SparseIntArray mFixedPoolSizes = new SparseIntArray();
+
+    // Bind counts per view type since the last reset
+    private final SparseIntArray mBindCounts = new SparseIntArray();
+    private int mBindCount = 0;
+    private boolean mAdaptive = false;
+    private boolean mAdaptPending = false;
+
+    private boolean mIdleHandlerAdded = false;
+    private int mPrewarmedCount = 0;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (mRecyclerView == null) {
+                mIdleHandlerAdded = false;
+                return false;
+            }
+            if (mAdaptPending) {
+                mAdaptPending = false;
+                adaptPoolSizes();
+            } else if (!mPending.isEmpty()) {
+                inflate(mPending.poll());
+            }
+            mIdleHandlerAdded = mAdaptPending || !mPending.isEmpty();
+            return mIdleHandlerAdded;
+        }
+    };
+
+    ViewHolderPrewarmer(AtlasMessagesAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    void setRecyclerView(RecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+        if (recyclerView == null) {
+            mPending.clear();
+            return;
+        }
+        for (int i = 0; i < mPoolSizes.size(); i++) {
+            recyclerView.getRecycledViewPool().setMaxRecycledViews(mPoolSizes.keyAt(i), mPoolSizes.valueAt(i));
+        }
+        if (!mPending.isEmpty()) scheduleIdle();
+    }
+
+    /**
+     * Inflates `count` holders for every registered cell view type during idle time.  Pool sizes
+     * are raised to fit the prewarmed holders.
+     *
+     * @param count Number of holders to inflate per view type.
+     * @return This ViewHolderPrewarmer.
+     */
+    public ViewHolderPrewarmer prewarm(int count) {
+        for (int viewType : mAdapter.getCellViewTypes()) {
+            prewarm(viewType, count);
+        }
+        return this;
+    }
+
+    /**
+     * Inflates `count` holders of the given view type during idle time.
+     *
+     * @param viewType View type to prewarm.
+     * @param count    Number of holders to inflate.
+     * @return This ViewHolderPrewarmer.
+     */
+    public ViewHolderPrewarmer prewarm(int viewType, int count) {
+        if (count <= 0) return this;
+        if (getPoolSize(viewType) < count) applyPoolSize(viewType, count);
+        for (int i = 0; i < count; i++) {
+            mPending.add(viewType);
+        }
+        scheduleIdle();
+        return this;
+    }
+
+    /**
+     * Cancels prewarming that has not run yet.
+     */
+    public void cancel() {
+        mPending.clear();
+        mAdaptPending = false;
+    }
+
+    /**
+     * Sets the RecycledViewPool size for the given view type.  Explicit sizes take precedence
+     * over adaptive sizing.
+     *
+     * @param viewType View type to size.
+     * @param size     Maximum number of pooled holders of this type.
+     * @return This ViewHolderPrewarmer.
+     */
+    public ViewHolderPrewarmer setPoolSize(int viewType, int size) {
+        mFixedPoolSizes.put(viewType, size);
+        applyPoolSize(viewType, size);
+        return this;
+    }
+
+    public int getPoolSize(int viewType) {
+        return mPoolSizes.get(viewType, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Enables or disables adapting pool sizes to the mix of view types being bound.
+     *
+     * @param adaptive `true` to adapt pool sizes to the content mix.
+     * @return This ViewHolderPrewarmer.
+     */
+    public ViewHolderPrewarmer setAdaptivePoolSizing(boolean adaptive) {
+        mAdaptive = adaptive;
+        return this;
+    }
+
+    /**
+     * Returns the number of holders inflated during idle time.
+     */
+    public int getPrewarmedCount() {
+        return mPrewarmedCount;
+    }
+
+    /**
+     * Forgets the content mix, e.g. when the adapter's Query changes.
+     */
+    void resetContentMix() {
+        mBindCounts.clear();
+        mBindCount = 0;
+    }
+
+    /**
+     * Records a bind of the given view type for adaptive sizing.
+     */
+    void onBind(int viewType) {
+        if (!mAdaptive) return;
+        mBindCounts.put(viewType, mBindCounts.get(viewType) + 1);
+        if (++mBindCount % ADAPT_INTERVAL_BINDS != 0) return;
+        mAdaptPending = true;
+        scheduleIdle();
+    }
+
+    /**
+     * Sizes each pool in proportion to its view type's share of binds, scaled to the number of
+     * rows currently on screen.
+     */
+    private void adaptPoolSizes() {
+        if (mRecyclerView == null || mBindCount == 0) return;
+        int rows = Math.max(1, mRecyclerView.getChildCount());
+        for (int i = 0; i < mBindCounts.size(); i++) {
+            int viewType = mBindCounts.keyAt(i);
+            if (mFixedPoolSizes.indexOfKey(viewType) >= 0) continue;
+            int size = (int) Math.ceil((double) rows * mBindCounts.valueAt(i) / mBindCount) + 1;
+            size = Math.max(MIN_ADAPTIVE_POOL_SIZE, Math.min(MAX_ADAPTIVE_POOL_SIZE, size));
+            if (size != getPoolSize(viewType)) applyPoolSize(viewType, size);
+        }
+    }
+
+    private void applyPoolSize(int viewType, int size) {
+        mPoolSizes.put(viewType, size);
+        if (mRecyclerView != null) mRecyclerView.getRecycledViewPool().setMaxRecycledViews(viewType, size);
+    }
+
+    private void inflate(int viewType) {
+        if (!mAdapter.isCellViewType(viewType)) return;
+        RecyclerView.ViewHolder holder = mAdapter.createViewHolder(mRecyclerView, viewType);
+        mRecyclerView.getRecycledViewPool().putRecycledView(holder);
+        mPrewarmedCount++;
+    }
+
+    private void scheduleIdle() {
+        if (mIdleHandlerAdded || mRecyclerView == null) return;
+        mIdleHandlerAdded = true;
+        Looper.myQueue().addIdleHandler(mIdleHandler);
+    }
+}
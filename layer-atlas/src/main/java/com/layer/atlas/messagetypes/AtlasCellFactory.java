@@ -1,7 +1,8 @@
 package com.layer.atlas.messagetypes;
 
+import android.net.Uri;
+import android.os.Looper;
 import android.support.v7.widget.RecyclerView;
-import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
@@ -9,6 +10,10 @@ import com.layer.atlas.provider.ParticipantProvider;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * CellFactories manage one or more types ot Messages for display within an AtlasMessagesAdapter.
  * Factories know what types of Messages they can render, generate ViewHolders for rendering their
@@ -16,21 +21,53 @@ import com.layer.sdk.messaging.Message;
  * display.
  */
 public abstract class AtlasCellFactory<Tholder extends AtlasCellFactory.CellHolder, Tcache extends AtlasCellFactory.ParsedContent> {
-    private final LruCache<String, Tcache> mCache;
+    // Parsed content budget that corresponds to a cache weight of 1.
+    private static final int BASE_CACHE_BYTES = 256 * 1024;
+
+    private volatile float mCacheWeight;
     protected MessageStyle mMessageStyle;
 
+    // Parse statistics
+    private final AtomicLong mParseCount = new AtomicLong();
+    private final AtomicLong mMainThreadParseCount = new AtomicLong();
+    private volatile ParseObserver mParseObserver;
+
     /**
-     * Constructs an AtlasCellFactory with a parsed content cache of `cacheBytes` size.
+     * Constructs an AtlasCellFactory caching parsed content in the shared ParsedContentCache with
+     * a weight of 1.
      *
-     * @param cacheBytes Maximum bytes of parsed content to maintain in an LRU cache.
+     * @see ParsedContentCache
+     */
+    public AtlasCellFactory() {
+        mCacheWeight = 1f;
+    }
+
+    /**
+     * Constructs an AtlasCellFactory caching parsed content in the shared ParsedContentCache,
+     * weighted by `cacheBytes` relative to the 256KB every built-in factory used to reserve.
+     *
+     * @param cacheBytes Relative share of parsed content to keep.
+     * @see #setCacheWeight(float)
      */
     public AtlasCellFactory(int cacheBytes) {
-        mCache = new LruCache<String, Tcache>(cacheBytes) {
-            @Override
-            protected int sizeOf(String key, Tcache value) {
-                return value.sizeOf();
-            }
-        };
+        mCacheWeight = Math.max(1, cacheBytes) / (float) BASE_CACHE_BYTES;
+    }
+
+    /**
+     * Sets this factory's weight in the shared ParsedContentCache.  Content from a factory with
+     * weight 2 is charged half its size against the global budget.
+     *
+     * @param weight Positive cache weight; 1 by default.
+     * @return This AtlasCellFactory.
+     */
+    public AtlasCellFactory<Tholder, Tcache> setCacheWeight(float weight) {
+        if (weight <= 0) throw new IllegalArgumentException("Cache weight must be positive");
+        mCacheWeight = weight;
+        return this;
+    }
+
+    public float getCacheWeight() {
+        return mCacheWeight;
     }
 
     /**
@@ -42,6 +79,18 @@ public abstract class AtlasCellFactory<Tholder extends AtlasCellFactory.CellHold
      */
     public abstract boolean isBindable(Message message);
 
+    /**
+     * Returns `true` if isBindable() depends only on a Message's MessagePart count and MIME types.
+     * The AtlasMessagesAdapter then resolves every Message with the same MessageShape to this
+     * CellFactory without calling isBindable() again.  Override to return `true` when that holds.
+     *
+     * @return `true` if isBindable() is determined by MessageShape alone, or `false` otherwise.
+     * @see MessageShape
+     */
+    public boolean isBindableByShape() {
+        return false;
+    }
+
     /**
      * This method must perform two actions.  First, any required View hierarchy for rendering this
      * CellFactory's Messages must be added to the provided `cellView` - either by inflating a
@@ -97,21 +146,151 @@ public abstract class AtlasCellFactory<Tholder extends AtlasCellFactory.CellHold
     }
 
     /**
-     * Returns previously parsed content for this Message, or calls parseContent() if it has not
-     * been previously parsed.
+     * Returns previously parsed content for this Message from memory or the
+     * ParsedContentDiskStore, or calls parseContent() if it has not been previously parsed.  The
+     * ParsedContentDiskStore is only read off the main thread; see warmParsedContent().
      *
      * @param message Message to return parsed content object for.
      * @return Parsed content object for the given Message.
      */
     public Tcache getParsedContent(LayerClient layerClient, ParticipantProvider participantProvider, Message message) {
-        String id = message.getId().toString();
-        Tcache value = mCache.get(id);
+        ParsedContentCache cache = ParsedContentCache.getInstance();
+        Uri id = message.getId();
+        Tcache value = cache.get(getClass(), id);
         if (value != null) return value;
+
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        ParsedContentCodec<Tcache> codec = getParsedContentCodec();
+        ParsedContentDiskStore diskStore = (codec == null) ? null : ParsedContentDiskStore.getInstance();
+        if (diskStore != null && !mainThread) {
+            value = diskStore.read(getClass().getName(), codec, id);
+            if (value != null) {
+                cache.put(getClass(), mCacheWeight, id, value);
+                return value;
+            }
+        }
+
+        mParseCount.incrementAndGet();
+        if (mainThread) mMainThreadParseCount.incrementAndGet();
+        ParseObserver observer = mParseObserver;
+        long start = (observer == null) ? 0 : System.nanoTime();
         value = parseContent(layerClient, participantProvider, message);
-        if (value != null) mCache.put(id, value);
+        if (observer != null) observer.onParsed(this, System.nanoTime() - start);
+        if (value == null) return null;
+        cache.put(getClass(), mCacheWeight, id, value);
+        if (diskStore != null && isPersistable(message, value)) diskStore.write(getClass().getName(), codec, id, value);
         return value;
     }
 
+    /**
+     * Loads persisted content for the given Messages from the ParsedContentDiskStore into memory,
+     * so later getParsedContent() calls on the main thread find it without parsing.  Messages
+     * already in memory are skipped.  Must be called off the main thread.
+     *
+     * @param messages Messages handled by this factory.
+     * @return The number of Messages loaded.
+     */
+    public int warmParsedContent(List<Message> messages) {
+        ParsedContentCodec<Tcache> codec = getParsedContentCodec();
+        ParsedContentDiskStore diskStore = (codec == null) ? null : ParsedContentDiskStore.getInstance();
+        if (diskStore == null || messages.isEmpty()) return 0;
+
+        ParsedContentCache cache = ParsedContentCache.getInstance();
+        List<Uri> ids = new ArrayList<Uri>(messages.size());
+        for (Message message : messages) {
+            Uri id = message.getId();
+            if (cache.get(getClass(), id) == null) ids.add(id);
+        }
+        if (ids.isEmpty()) return 0;
+
+        List<Tcache> values = diskStore.read(getClass().getName(), codec, ids);
+        int loaded = 0;
+        for (int i = 0; i < values.size(); i++) {
+            Tcache value = values.get(i);
+            if (value == null) continue;
+            cache.put(getClass(), mCacheWeight, ids.get(i), value);
+            loaded++;
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns a ParsedContentCodec for persisting this factory's parsed content in the
+     * ParsedContentDiskStore, or `null` to keep parsed content in memory only.  Override when
+     * parsing is more expensive than reading a small record from disk.
+     *
+     * @return A ParsedContentCodec, or `null`.
+     * @see ParsedContentDiskStore
+     */
+    public ParsedContentCodec<Tcache> getParsedContentCodec() {
+        return null;
+    }
+
+    /**
+     * Returns `true` if the given parsed content is final and may be persisted.  Override to
+     * skip content parsed from incomplete MessagePart data.
+     *
+     * @param message Message the content was parsed from.
+     * @param content Parsed content.
+     * @return `true` if the content may be persisted.
+     */
+    protected boolean isPersistable(Message message, Tcache content) {
+        return true;
+    }
+
+    /**
+     * Returns previously parsed content for this Message, or `null` if it has not been parsed.
+     *
+     * @param message Message to return parsed content object for.
+     * @return Parsed content object for the given Message, or `null`.
+     */
+    public Tcache peekParsedContent(Message message) {
+        return ParsedContentCache.getInstance().get(getClass(), message.getId());
+    }
+
+    /**
+     * Replaces the in-memory parsed content for this Message, e.g. after loading more of it on
+     * demand.  The ParsedContentDiskStore keeps what parseContent() produced.
+     *
+     * @param message Message to replace parsed content for.
+     * @param content New parsed content.
+     */
+    protected void setParsedContent(Message message, Tcache content) {
+        ParsedContentCache.getInstance().put(getClass(), mCacheWeight, message.getId(), content);
+    }
+
+    /**
+     * Returns the number of times parseContent() has been called through getParsedContent().
+     */
+    public long getParseCount() {
+        return mParseCount.get();
+    }
+
+    /**
+     * Returns the number of times getParsedContent() had to parse synchronously on the main
+     * thread because neither pre-processing nor prefetching had parsed the Message yet.
+     */
+    public long getMainThreadParseCount() {
+        return mMainThreadParseCount.get();
+    }
+
+    /**
+     * Sets a ParseObserver to time this factory's parseContent() calls, or `null` to stop timing.
+     *
+     * @param observer ParseObserver to notify, or `null`.
+     */
+    public void setParseObserver(ParseObserver observer) {
+        mParseObserver = observer;
+    }
+
+    /**
+     * Receives the duration of each parseContent() call made through getParsedContent(), on the
+     * thread that parsed.
+     */
+    public interface ParseObserver {
+        void onParsed(AtlasCellFactory factory, long durationNanos);
+    }
+
     /**
      * CellHolders maintain a reference to their Message, and allow the capture of user interactions
      * with their messages (e.g. clicks).  CellHolders can be extended to act as View caches, where
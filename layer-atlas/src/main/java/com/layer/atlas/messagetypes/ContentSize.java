@@ -0,0 +1,49 @@
+package com.layer.atlas.messagetypes;
+
+/**
+ * ContentSize estimates the memory held by ParsedContent without allocating.  Strings are
+ * measured by their UTF-16 length, which is what they occupy on the heap, instead of by encoding
+ * a copy with String.getBytes().  A counting UTF-8 pass is available where encoded sizes matter,
+ * e.g. when writing content to disk.
+ *
+ * @see AtlasCellFactory.ParsedContent#sizeOf()
+ */
+public final class ContentSize {
+    public static final int INT_BYTES = Integer.SIZE / Byte.SIZE;
+    public static final int LONG_BYTES = Long.SIZE / Byte.SIZE;
+    public static final int DOUBLE_BYTES = Double.SIZE / Byte.SIZE;
+
+    private ContentSize() {
+    }
+
+    /**
+     * Returns the heap bytes occupied by the characters of `chars`, or 0 for `null`.
+     */
+    public static int of(CharSequence chars) {
+        return chars == null ? 0 : chars.length() * (Character.SIZE / Byte.SIZE);
+    }
+
+    /**
+     * Returns the number of bytes `chars` encodes to in UTF-8, or 0 for `null`.  Unpaired
+     * surrogates count as one byte, matching the '?' String.getBytes() substitutes for them.
+     */
+    public static int utf8Length(CharSequence chars) {
+        if (chars == null) return 0;
+        int length = chars.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                // Four bytes for the pair, already counted as two.
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,32 @@
+package com.layer.atlas.messagetypes;
+
+import android.content.Context;
+
+import com.layer.sdk.messaging.Message;
+
+/**
+ * MessagePreviewProviders generate the one-line previews shown for a Conversation's last Message.
+ * AtlasCellFactories implementing this interface are registered with the MessagePreviewRegistry
+ * when added to an AtlasMessagesAdapter; others can be registered directly.
+ *
+ * @see MessagePreviewRegistry
+ */
+public interface MessagePreviewProvider {
+    /**
+     * Returns `true` if this provider generates previews for the given Message.
+     */
+    boolean isPreviewable(Message message);
+
+    /**
+     * Returns `true` if isPreviewable() depends only on a Message's MessageShape, so the result can
+     * be reused for every Message with the same shape.
+     *
+     * @see MessageShape
+     */
+    boolean isPreviewableByShape();
+
+    /**
+     * Returns the preview for the given Message.
+     */
+    String getPreview(Context context, Message message);
+}
@@ -0,0 +1,183 @@
+package com.layer.atlas.messagetypes;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import com.layer.atlas.messagetypes.generic.GenericCellFactory;
+import com.layer.atlas.messagetypes.location.LocationCellFactory;
+import com.layer.atlas.messagetypes.singlepartimage.SinglePartImageCellFactory;
+import com.layer.atlas.messagetypes.text.TextCellFactory;
+import com.layer.atlas.messagetypes.threepartimage.ThreePartImageCellFactory;
+import com.layer.sdk.messaging.Message;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MessagePreviewRegistry maps Messages to MessagePreviewProviders for Conversation list previews.
+ * Providers are resolved once per MessageShape signature when they decide by shape alone, and
+ * previews are cached per Message ID, so binding a Conversation row is a couple of map lookups.
+ *
+ * Registered providers take precedence over earlier registrations and over the built-in text,
+ * image, and location providers.  Messages no provider accepts get GenericCellFactory's preview.
+ */
+public final class MessagePreviewRegistry {
+    private static final int PREVIEW_CACHE_SIZE = 256;
+
+    private static final MessagePreviewRegistry sInstance = new MessagePreviewRegistry();
+
+    private volatile MessagePreviewProvider[] mProviders;
+    private final ConcurrentHashMap<String, MessagePreviewProvider> mProvidersByShape = new ConcurrentHashMap<String, MessagePreviewProvider>();
+    private final LruCache<Uri, String> mPreviews = new LruCache<Uri, String>(PREVIEW_CACHE_SIZE);
+    private volatile Locale mPreviewLocale;
+
+    private MessagePreviewRegistry() {
+        mProviders = new MessagePreviewProvider[]{
+                new BuiltInProvider(BuiltInProvider.TEXT),
+                new BuiltInProvider(BuiltInProvider.THREE_PART_IMAGE),
+                new BuiltInProvider(BuiltInProvider.LOCATION),
+                new BuiltInProvider(BuiltInProvider.SINGLE_PART_IMAGE)
+        };
+    }
+
+    public static MessagePreviewRegistry getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Registers a MessagePreviewProvider ahead of all previously registered providers.  Providers
+     * are registered by class: registering a provider whose class is already registered replaces
+     * the earlier instance in its existing position, so each new AtlasMessagesAdapter's cell
+     * factories neither accumulate here nor invalidate resolved providers and cached previews.
+     *
+     * @param provider MessagePreviewProvider to register.
+     * @return This MessagePreviewRegistry.
+     */
+    public synchronized MessagePreviewRegistry register(MessagePreviewProvider provider) {
+        MessagePreviewProvider[] providers = mProviders;
+        for (int i = 0; i < providers.length; i++) {
+            MessagePreviewProvider registered = providers[i];
+            if (registered == provider) return this;
+            if (registered.getClass() != provider.getClass()) continue;
+
+            MessagePreviewProvider[] updated = providers.clone();
+            updated[i] = provider;
+            mProviders = updated;
+            // Same class, same precedence: repoint resolutions rather than discarding them.
+            for (String shape : mProvidersByShape.keySet()) {
+                mProvidersByShape.replace(shape, registered, provider);
+            }
+            return this;
+        }
+
+        MessagePreviewProvider[] updated = new MessagePreviewProvider[providers.length + 1];
+        updated[0] = provider;
+        System.arraycopy(providers, 0, updated, 1, providers.length);
+        mProviders = updated;
+
+        // Precedence changed, so earlier resolutions may be stale.
+        mProvidersByShape.clear();
+        mPreviews.evictAll();
+        return this;
+    }
+
+    /**
+     * Returns the preview for the given Message.
+     *
+     * @param context Context for resolving preview strings.
+     * @param message Message to preview.
+     * @return The Message preview.
+     */
+    public String getPreview(Context context, Message message) {
+        Locale locale = context.getResources().getConfiguration().locale;
+        if (!locale.equals(mPreviewLocale)) {
+            mPreviews.evictAll();
+            mPreviewLocale = locale;
+        }
+
+        Uri id = message.getId();
+        String preview = mPreviews.get(id);
+        if (preview != null) return preview;
+
+        MessagePreviewProvider provider = getProvider(message);
+        preview = (provider == null) ? GenericCellFactory.getPreview(context, message) : provider.getPreview(context, message);
+        if (preview == null) return null;
+        // Empty previews usually mean content has not downloaded yet; try again next time.
+        if (preview.length() > 0) mPreviews.put(id, preview);
+        return preview;
+    }
+
+    /**
+     * Drops cached previews, e.g. after a Message's content changes.
+     */
+    public void clearPreviews() {
+        mPreviews.evictAll();
+    }
+
+    private MessagePreviewProvider getProvider(Message message) {
+        String shape = MessageShape.getSignature(message);
+        MessagePreviewProvider provider = mProvidersByShape.get(shape);
+        if (provider != null) return provider;
+
+        boolean byShape = true;
+        for (MessagePreviewProvider candidate : mProviders) {
+            byShape &= candidate.isPreviewableByShape();
+            if (candidate.isPreviewable(message)) {
+                provider = candidate;
+                break;
+            }
+        }
+        if (provider != null && byShape) mProvidersByShape.put(shape, provider);
+        return provider;
+    }
+
+    /**
+     * Adapts the built-in AtlasCellFactories' static isType() and getMessagePreview() methods.
+     */
+    private static class BuiltInProvider implements MessagePreviewProvider {
+        static final int TEXT = 0;
+        static final int THREE_PART_IMAGE = 1;
+        static final int LOCATION = 2;
+        static final int SINGLE_PART_IMAGE = 3;
+
+        private final int mType;
+
+        BuiltInProvider(int type) {
+            mType = type;
+        }
+
+        @Override
+        public boolean isPreviewable(Message message) {
+            switch (mType) {
+                case TEXT:
+                    return TextCellFactory.isType(message);
+                case THREE_PART_IMAGE:
+                    return ThreePartImageCellFactory.isType(message);
+                case LOCATION:
+                    return LocationCellFactory.isType(message);
+                default:
+                    return SinglePartImageCellFactory.isType(message);
+            }
+        }
+
+        @Override
+        public boolean isPreviewableByShape() {
+            return true;
+        }
+
+        @Override
+        public String getPreview(Context context, Message message) {
+            switch (mType) {
+                case TEXT:
+                    return TextCellFactory.getMessagePreview(context, message);
+                case THREE_PART_IMAGE:
+                    return ThreePartImageCellFactory.getMessagePreview(context, message);
+                case LOCATION:
+                    return LocationCellFactory.getMessagePreview(context, message);
+                default:
+                    return SinglePartImageCellFactory.getMessagePreview(context, message);
+            }
+        }
+    }
+}
@@ -46,6 +46,10 @@ public abstract class MessageSender {
         return this;
     }
 
+    protected Conversation getConversation() {
+        return mConversation;
+    }
+
     protected Context getContext() {
         return mContext;
     }
@@ -77,6 +81,22 @@ public abstract class MessageSender {
         return false;
     }
 
+    /**
+     * Reports a PendingSend's new State to this MessageSender's ProgressCallback, if any.
+     */
+    void dispatchSendProgress(PendingSend pendingSend) {
+        if (!(mCallback instanceof ProgressCallback)) return;
+        ProgressCallback callback = (ProgressCallback) mCallback;
+        if (pendingSend.getState() == PendingSend.State.FAILED) {
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e("Message preparation failed in " + getClass().getSimpleName(), pendingSend.getError());
+            }
+            callback.onSendFailed(this, pendingSend, pendingSend.getError());
+        } else {
+            callback.onSendProgress(this, pendingSend);
+        }
+    }
+
     /**
      * Callback alerts external classes of MessageSender events.
      */
@@ -98,4 +118,31 @@ public abstract class MessageSender {
          */
         boolean beforeSend(MessageSender sender, LayerClient layerClient, ParticipantProvider participantProvider, Conversation conversation, Message message);
     }
+
+    /**
+     * ProgressCallback additionally receives progress for Messages prepared in the background,
+     * such as images.  Register one with setCallback(); beforeSend() is still called once the
+     * Message is created.
+     *
+     * @see PendingSend
+     */
+    public interface ProgressCallback extends Callback {
+        /**
+         * Called on the main thread when a PendingSend is queued, starts processing, is sent, or
+         * is aborted.
+         *
+         * @param sender      The MessageSender preparing the Message.
+         * @param pendingSend The PendingSend whose State changed.
+         */
+        void onSendProgress(MessageSender sender, PendingSend pendingSend);
+
+        /**
+         * Called on the main thread when a Message could not be created.
+         *
+         * @param sender      The MessageSender preparing the Message.
+         * @param pendingSend The PendingSend that failed.
+         * @param error       Cause of the failure.
+         */
+        void onSendFailed(MessageSender sender, PendingSend pendingSend, Exception error);
+    }
 }
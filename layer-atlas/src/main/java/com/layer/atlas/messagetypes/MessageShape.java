@@ -0,0 +1,44 @@
+package com.layer.atlas.messagetypes;
+
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MessageShape reduces a Message to a compact signature made of its MessagePart count and MIME
+ * types, e.g. "3|image/jpeg|image/jpeg+preview|application/json+imageSize".  Signatures are
+ * interned, so Messages with the same shape share one String instance that can be used as a cheap
+ * map key when dispatching on message type.
+ */
+public final class MessageShape {
+    // Shapes are few in practice; stop interning past this to bound memory on unexpected input.
+    private static final int MAX_INTERNED = 1024;
+
+    private static final ConcurrentHashMap<String, String> sSignatures = new ConcurrentHashMap<String, String>();
+
+    private MessageShape() {
+    }
+
+    /**
+     * Returns the interned shape signature for the given Message.
+     *
+     * @param message Message to describe.
+     * @return The Message's shape signature.
+     */
+    public static String getSignature(Message message) {
+        List<MessagePart> parts = message.getMessageParts();
+        StringBuilder b = new StringBuilder(16 * (parts.size() + 1));
+        b.append(parts.size());
+        for (MessagePart part : parts) {
+            b.append('|').append(part.getMimeType());
+        }
+        String signature = b.toString();
+        String interned = sSignatures.get(signature);
+        if (interned != null) return interned;
+        if (sSignatures.size() >= MAX_INTERNED) return signature;
+        interned = sSignatures.putIfAbsent(signature, signature);
+        return (interned == null) ? signature : interned;
+    }
+}
@@ -0,0 +1,205 @@
+package com.layer.atlas.messagetypes;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import com.layer.atlas.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ParsedContentCache holds parsed content for every AtlasCellFactory in the process under one
+ * memory budget, sized from the device's heap limit.  Factories share the budget according to
+ * their weights: an entry from a factory with weight 2 is charged half its size, so that factory
+ * can keep roughly twice as much content as a factory with weight 1.  Entries are keyed by factory
+ * class, so a new instance of a factory, e.g. on the next messages screen, finds content parsed by
+ * earlier instances.
+ *
+ * Once registered with a Context, the cache trims itself when the system reports memory
+ * pressure through ComponentCallbacks2.onTrimMemory().  Safe to call from any thread.
+ */
+public final class ParsedContentCache implements ComponentCallbacks2 {
+    // Fraction of the heap limit used as the default budget.
+    private static final int DEFAULT_HEAP_DIVISOR = 64;
+
+    private static final ParsedContentCache sInstance = new ParsedContentCache();
+
+    private volatile Cache mCache;
+    private volatile boolean mRegistered = false;
+
+    // Entries dropped to make room, or trimmed under memory pressure
+    private final AtomicLong mEvictionCount = new AtomicLong();
+    private final AtomicLong mTrimCount = new AtomicLong();
+
+    private ParsedContentCache() {
+        mCache = new Cache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVISOR));
+    }
+
+    public static ParsedContentCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Registers for memory pressure callbacks on the application Context.  Subsequent calls are
+     * ignored.
+     *
+     * @param context Any Context of this application.
+     */
+    public void register(Context context) {
+        if (mRegistered) return;
+        synchronized (this) {
+            if (mRegistered) return;
+            context.getApplicationContext().registerComponentCallbacks(this);
+            mRegistered = true;
+        }
+    }
+
+    /**
+     * Sets the global budget in bytes, dropping all cached content.
+     *
+     * @param maxBytes Maximum weighted bytes of parsed content to keep.
+     */
+    public void setMaxBytes(int maxBytes) {
+        Cache old = mCache;
+        mCache = new Cache(maxBytes);
+        old.evictAll();
+    }
+
+    public int getMaxBytes() {
+        return mCache.maxSize();
+    }
+
+    /**
+     * Returns the current weighted size of cached content in bytes.
+     */
+    public int getSize() {
+        return mCache.size();
+    }
+
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * Returns the number of entries dropped to stay within budget or under memory pressure.
+     */
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    /**
+     * Returns the number of times the cache was trimmed in response to memory pressure.
+     */
+    public long getTrimCount() {
+        return mTrimCount.get();
+    }
+
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends AtlasCellFactory.ParsedContent> T get(Class<?> factoryClass, Uri messageId) {
+        Entry entry = mCache.get(new Key(factoryClass, messageId));
+        return entry == null ? null : (T) entry.mContent;
+    }
+
+    void put(Class<?> factoryClass, float weight, Uri messageId, AtlasCellFactory.ParsedContent content) {
+        int charge = Math.max(1, (int) (content.sizeOf() / weight));
+        mCache.put(new Key(factoryClass, messageId), new Entry(content, charge));
+    }
+
+    //==============================================================================================
+    // ComponentCallbacks2
+    //==============================================================================================
+
+    @Override
+    public void onTrimMemory(int level) {
+        Cache cache = mCache;
+        if (level >= TRIM_MEMORY_MODERATE) {
+            // Near the top of the kill list; give everything back.
+            cache.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.trimToSize(cache.maxSize() / 4);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            cache.trimToSize(cache.maxSize() / 2);
+        } else {
+            return;
+        }
+        mTrimCount.incrementAndGet();
+        if (Log.isLoggable(Log.VERBOSE)) Log.v("Trimmed parsed content cache to " + cache.size() + " bytes at level " + level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        mCache.evictAll();
+        mTrimCount.incrementAndGet();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Parsed content does not depend on configuration.
+    }
+
+    //==============================================================================================
+    // Inner classes
+    //==============================================================================================
+
+    private class Cache extends LruCache<Key, Entry> {
+        Cache(int maxBytes) {
+            super(Math.max(1, maxBytes));
+        }
+
+        @Override
+        protected int sizeOf(Key key, Entry entry) {
+            return entry.mCharge;
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Key key, Entry oldValue, Entry newValue) {
+            if (evicted) mEvictionCount.incrementAndGet();
+        }
+    }
+
+    private static final class Key {
+        final Class<?> mFactoryClass;
+        final Uri mMessageId;
+
+        Key(Class<?> factoryClass, Uri messageId) {
+            mFactoryClass = factoryClass;
+            mMessageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return mFactoryClass == key.mFactoryClass && mMessageId.equals(key.mMessageId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mFactoryClass.hashCode() + mMessageId.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final AtlasCellFactory.ParsedContent mContent;
+
+        // Weighted size, fixed at insertion so removal credits back what was charged.
+        final int mCharge;
+
+        Entry(AtlasCellFactory.ParsedContent content, int charge) {
+            mContent = content;
+            mCharge = charge;
+        }
+    }
+}
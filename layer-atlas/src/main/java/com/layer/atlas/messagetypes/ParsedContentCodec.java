@@ -0,0 +1,21 @@
+package com.layer.atlas.messagetypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * ParsedContentCodec serializes an AtlasCellFactory's ParsedContent for the ParsedContentDiskStore.
+ * Bump the version whenever the encoding changes; records written with other versions are
+ * ignored and re-parsed.
+ *
+ * @param <T> ParsedContent type.
+ * @see AtlasCellFactory#getParsedContentCodec()
+ */
+public interface ParsedContentCodec<T extends AtlasCellFactory.ParsedContent> {
+    int getVersion();
+
+    void write(T content, DataOutput out) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
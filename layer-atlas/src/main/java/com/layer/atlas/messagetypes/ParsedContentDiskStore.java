@@ -0,0 +1,368 @@
+package com.layer.atlas.messagetypes;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Process;
+
+import com.layer.atlas.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ParsedContentDiskStore persists parsed content across process restarts, so reopening a
+ * conversation reads compact records instead of re-reading and re-parsing MessagePart data.
+ * Only AtlasCellFactories that provide a ParsedContentCodec are persisted.  The store is disabled
+ * until enable() is called.
+ *
+ * Each record is one file in the app's cache directory, named by a hash of the factory and
+ * Message ID:
+ *
+ * <pre>
+ *   int    MAGIC
+ *   byte   FORMAT_VERSION
+ *   int    codec version
+ *   UTF    factory key
+ *   UTF    Message ID
+ *   ...    codec payload
+ * </pre>
+ *
+ * The key is stored in the record, so hash collisions read as misses.  Writes happen on a
+ * background thread; reads are synchronous and never made on the main thread.  The query
+ * controller's pre-processing thread reads as a conversation opens, and the ParsePrefetcher reads
+ * in batches ahead of scrolling.  When the store grows past its quota, the least recently written
+ * records are deleted.
+ */
+public final class ParsedContentDiskStore {
+    private static final String DIRECTORY = "atlas-parsed-content";
+    private static final int MAGIC = 0x41504331;
+    private static final byte FORMAT_VERSION = 1;
+
+    // Trim to this fraction of the quota, so trimming does not run on every write.
+    private static final float TRIM_TARGET = 0.9f;
+
+    // Writes queued beyond this are dropped; the content will be written when parsed again.
+    private static final int MAX_PENDING_WRITES = 64;
+
+    // Longest String a record may hold, so corrupt lengths cannot request huge allocations.
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    private static volatile ParsedContentDiskStore sInstance;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final AtomicLong mSize = new AtomicLong(-1);
+    private final ThreadPoolExecutor mWriter;
+
+    // Statistics
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mWriteCount = new AtomicLong();
+
+    private ParsedContentDiskStore(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mWriter = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "AtlasParsedContentDiskStore");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mWriter.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Enables the disk store with the given quota.  Subsequent calls return the existing store.
+     *
+     * @param context  Context for locating the cache directory.
+     * @param maxBytes Quota for stored records in bytes.
+     * @return The enabled ParsedContentDiskStore.
+     */
+    public static ParsedContentDiskStore enable(Context context, long maxBytes) {
+        if (sInstance == null) {
+            synchronized (ParsedContentDiskStore.class) {
+                if (sInstance == null) {
+                    File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY);
+                    if (!directory.isDirectory() && !directory.mkdirs()) {
+                        if (Log.isLoggable(Log.ERROR)) Log.e("Could not create " + directory);
+                    }
+                    sInstance = new ParsedContentDiskStore(directory, maxBytes);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the enabled ParsedContentDiskStore, or `null` if enable() has not been called.
+     */
+    public static ParsedContentDiskStore getInstance() {
+        return sInstance;
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getWriteCount() {
+        return mWriteCount.get();
+    }
+
+    /**
+     * Deletes all stored records.
+     */
+    public void clear() {
+        mWriter.getQueue().clear();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mSize.set(0);
+    }
+
+    /**
+     * Reads a stored record, returning `null` if none exists or it was written by another key or
+     * codec version.
+     */
+    <T extends AtlasCellFactory.ParsedContent> T read(String factoryKey, ParsedContentCodec<T> codec, Uri messageId) {
+        String id = messageId.toString();
+        File file = getFile(factoryKey, id);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION || in.readInt() != codec.getVersion()
+                    || !factoryKey.equals(in.readUTF()) || !id.equals(in.readUTF())) {
+                mMissCount.incrementAndGet();
+                return null;
+            }
+            T content = codec.read(in);
+            mHitCount.incrementAndGet();
+            return content;
+        } catch (FileNotFoundException e) {
+            mMissCount.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            if (Log.isLoggable(Log.WARN)) Log.w("Discarding unreadable record " + file, e);
+            file.delete();
+            mMissCount.incrementAndGet();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Reads stored records for a batch of Messages, listing the store once so Messages without a
+     * record are skipped without opening files.
+     *
+     * @return Content for each ID, in order, with `null` for misses.
+     */
+    <T extends AtlasCellFactory.ParsedContent> List<T> read(String factoryKey, ParsedContentCodec<T> codec, List<Uri> messageIds) {
+        List<T> values = new ArrayList<T>(messageIds.size());
+        String[] names = mDirectory.list();
+        Set<String> stored = new HashSet<String>();
+        if (names != null) Collections.addAll(stored, names);
+        for (Uri messageId : messageIds) {
+            if (stored.contains(getFile(factoryKey, messageId.toString()).getName())) {
+                values.add(read(factoryKey, codec, messageId));
+            } else {
+                mMissCount.incrementAndGet();
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Queues a record to be written in the background.
+     */
+    <T extends AtlasCellFactory.ParsedContent> void write(final String factoryKey, final ParsedContentCodec<T> codec, Uri messageId, final T content) {
+        final String id = messageId.toString();
+        try {
+            mWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeNow(factoryKey, codec, id, content);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (Log.isLoggable(Log.VERBOSE)) Log.v("Dropping parsed content write for " + id);
+        }
+    }
+
+    private <T extends AtlasCellFactory.ParsedContent> void writeNow(String factoryKey, ParsedContentCodec<T> codec, String id, T content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeInt(MAGIC);
+            record.writeByte(FORMAT_VERSION);
+            record.writeInt(codec.getVersion());
+            record.writeUTF(factoryKey);
+            record.writeUTF(id);
+            codec.write(content, record);
+            record.flush();
+        } catch (IOException e) {
+            if (Log.isLoggable(Log.WARN)) Log.w("Could not encode parsed content for " + id, e);
+            return;
+        }
+
+        // Write to a temporary file and rename, so readers never see partial records.
+        File file = getFile(factoryKey, id);
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+        long previous = file.length();
+        BufferedOutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            bytes.writeTo(out);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) throw new IOException("Could not rename " + temp);
+        } catch (IOException e) {
+            if (Log.isLoggable(Log.WARN)) Log.w("Could not write parsed content for " + id, e);
+            temp.delete();
+            return;
+        } finally {
+            closeQuietly(out);
+        }
+        mWriteCount.incrementAndGet();
+        if (mSize.get() < 0) {
+            // First write in this process; measure what earlier processes left behind.
+            measure();
+        } else {
+            mSize.addAndGet(bytes.size() - previous);
+        }
+        if (mSize.get() > mMaxBytes) trim();
+    }
+
+    private void measure() {
+        long size = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        mSize.set(size);
+    }
+
+    /**
+     * Deletes the least recently written records until the store is below its trim target.
+     */
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        long target = (long) (mMaxBytes * TRIM_TARGET);
+        for (int i = 0; i < files.length && size > target; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) size -= length;
+        }
+        mSize.set(size);
+    }
+
+    /**
+     * Writes a nullable String of up to MAX_STRING_LENGTH characters, for use by
+     * ParsedContentCodecs.
+     *
+     * @throws IOException if the String is too long to store.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        if (value.length() > MAX_STRING_LENGTH) {
+            throw new IOException("String of " + value.length() + " characters is too long to store");
+        }
+        out.writeInt(value.length());
+        out.writeChars(value);
+    }
+
+    /**
+     * Reads a String written by writeString().
+     *
+     * @throws IOException if the stored length is invalid.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) return null;
+        if (length < 0 || length > MAX_STRING_LENGTH) throw new IOException("Invalid string length " + length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+
+    private File getFile(String factoryKey, String id) {
+        long hash = 1125899906842597L;
+        hash = hash(hash, factoryKey);
+        hash = hash(hash * 31 + '|', id);
+        return new File(mDirectory, Long.toHexString(hash));
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing to recover.
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.layer.atlas.messagetypes;
+
+import com.layer.sdk.messaging.Conversation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PendingSend tracks a Message that a MessageSender is still preparing off the main thread, such
+ * as an image being decoded and compressed.  While a PendingSend is QUEUED or PROCESSING it is
+ * listed in the PendingSendRegistry, where AtlasMessagesAdapters find it to show a placeholder.
+ * State changes are reported to the sender's MessageSender.ProgressCallback, if it has one.
+ *
+ * All methods must be called on the main thread.
+ *
+ * @see MessageSender.ProgressCallback
+ * @see PendingSendRegistry
+ */
+public final class PendingSend {
+    public enum State {
+        QUEUED,
+        PROCESSING,
+        SENT,
+        FAILED,
+        ABORTED;
+
+        /**
+         * Returns `true` once a PendingSend in this State will not change again.
+         */
+        public boolean isFinished() {
+            return this == SENT || this == FAILED || this == ABORTED;
+        }
+    }
+
+    private static final AtomicInteger sNextId = new AtomicInteger();
+
+    private final int mId = sNextId.incrementAndGet();
+    private final MessageSender mSender;
+    private final Conversation mConversation;
+    private State mState;
+    private Exception mError;
+
+    public PendingSend(MessageSender sender, Conversation conversation) {
+        if (sender == null) throw new IllegalArgumentException("Null sender");
+        if (conversation == null) throw new IllegalArgumentException("Null conversation");
+        mSender = sender;
+        mConversation = conversation;
+    }
+
+    /**
+     * Returns an ID unique to this PendingSend within the process.
+     */
+    public int getId() {
+        return mId;
+    }
+
+    public MessageSender getSender() {
+        return mSender;
+    }
+
+    public Conversation getConversation() {
+        return mConversation;
+    }
+
+    /**
+     * Returns this PendingSend's State, or `null` before it is first updated.
+     */
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * Returns the failure reported with fail(), or `null`.
+     */
+    public Exception getError() {
+        return mError;
+    }
+
+    /**
+     * Moves this PendingSend to the given State, registering or unregistering it with the
+     * PendingSendRegistry and notifying the sender's ProgressCallback.  Updates after a finished
+     * State are ignored.
+     *
+     * @param state New State.
+     */
+    public void update(State state) {
+        if (state == State.FAILED) throw new IllegalArgumentException("Use fail() to report failures");
+        setState(state);
+    }
+
+    /**
+     * Finishes this PendingSend as FAILED.
+     *
+     * @param error Cause of the failure.
+     */
+    public void fail(Exception error) {
+        mError = error;
+        setState(State.FAILED);
+    }
+
+    private void setState(State state) {
+        if (mState == state || (mState != null && mState.isFinished())) return;
+        boolean added = mState == null;
+        mState = state;
+        PendingSendRegistry registry = PendingSendRegistry.getInstance();
+        if (state.isFinished()) {
+            registry.remove(this);
+        } else if (added) {
+            registry.add(this);
+        } else {
+            registry.notifyChanged(this);
+        }
+        mSender.dispatchSendProgress(this);
+    }
+}
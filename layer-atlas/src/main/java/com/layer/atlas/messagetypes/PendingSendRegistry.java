@@ -0,0 +1,83 @@
+package com.layer.atlas.messagetypes;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * PendingSendRegistry lists unfinished PendingSends by Conversation, in the order they were
+ * queued.  Must be used from the main thread.
+ *
+ * @see PendingSend
+ */
+public final class PendingSendRegistry {
+    private static final PendingSendRegistry sInstance = new PendingSendRegistry();
+
+    private final Map<Uri, List<PendingSend>> mPending = new HashMap<Uri, List<PendingSend>>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+
+    private PendingSendRegistry() {
+    }
+
+    public static PendingSendRegistry getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the unfinished PendingSends for the given Conversation, oldest first.
+     *
+     * @param conversationId ID of the Conversation.
+     * @return An unmodifiable snapshot of the Conversation's PendingSends.
+     */
+    public List<PendingSend> getPendingSends(Uri conversationId) {
+        List<PendingSend> pending = mPending.get(conversationId);
+        if (pending == null) return Collections.emptyList();
+        return Collections.unmodifiableList(new ArrayList<PendingSend>(pending));
+    }
+
+    public void addListener(Listener listener) {
+        if (!mListeners.contains(listener)) mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    void add(PendingSend pendingSend) {
+        Uri conversationId = pendingSend.getConversation().getId();
+        List<PendingSend> pending = mPending.get(conversationId);
+        if (pending == null) {
+            pending = new ArrayList<PendingSend>();
+            mPending.put(conversationId, pending);
+        }
+        pending.add(pendingSend);
+        notifyChanged(pendingSend);
+    }
+
+    void remove(PendingSend pendingSend) {
+        Uri conversationId = pendingSend.getConversation().getId();
+        List<PendingSend> pending = mPending.get(conversationId);
+        if (pending == null || !pending.remove(pendingSend)) return;
+        if (pending.isEmpty()) mPending.remove(conversationId);
+        notifyChanged(pendingSend);
+    }
+
+    void notifyChanged(PendingSend pendingSend) {
+        Uri conversationId = pendingSend.getConversation().getId();
+        for (Listener listener : mListeners) {
+            listener.onPendingSendsChanged(conversationId);
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called when a PendingSend in the given Conversation is added, updated, or finished.
+         */
+        void onPendingSendsChanged(Uri conversationId);
+    }
+}
@@ -8,6 +8,7 @@ import android.widget.TextView;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ContentSize;
 import com.layer.atlas.provider.ParticipantProvider;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
@@ -18,7 +19,6 @@ import com.layer.sdk.messaging.MessagePart;
  */
 public class GenericCellFactory extends AtlasCellFactory<GenericCellFactory.CellHolder, GenericCellFactory.ParsedContent> {
     public GenericCellFactory() {
-        super(256 * 1024);
     }
 
     public static String getPreview(Context context, Message message) {
@@ -39,6 +39,11 @@ public class GenericCellFactory extends AtlasCellFactory<GenericCellFactory.Cell
         return true;
     }
 
+    @Override
+    public boolean isBindableByShape() {
+        return true;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         Context context = cellView.getContext();
@@ -84,7 +89,7 @@ public class GenericCellFactory extends AtlasCellFactory<GenericCellFactory.Cell
 
         public ParsedContent(String string) {
             mString = string;
-            mSize = mString.getBytes().length;
+            mSize = ContentSize.of(mString);
         }
 
         public String getString() {
@@ -12,7 +12,11 @@ import android.widget.ImageView;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ContentSize;
+import com.layer.atlas.messagetypes.ParsedContentCodec;
+import com.layer.atlas.messagetypes.ParsedContentDiskStore;
 import com.layer.atlas.provider.ParticipantProvider;
+import com.layer.atlas.util.FlatJsonReader;
 import com.layer.atlas.util.Log;
 import com.layer.atlas.util.Util;
 import com.layer.atlas.util.picasso.transformations.RoundedTransform;
@@ -22,9 +26,9 @@ import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 import com.squareup.picasso.Transformation;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.net.URLEncoder;
 
 public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.CellHolder, LocationCellFactory.Location> implements View.OnClickListener {
@@ -37,11 +41,38 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
     private static final int PLACEHOLDER = R.drawable.atlas_message_item_cell_placeholder;
     private static final double GOLDEN_RATIO = (1.0 + Math.sqrt(5.0)) / 2.0;
 
+    private static final byte[][] JSON_NAMES = FlatJsonReader.names(KEY_LATITUDE, KEY_LONGITUDE, KEY_LABEL);
+    private static final int JSON_LATITUDE = 0;
+    private static final int JSON_LONGITUDE = 1;
+    private static final int JSON_LABEL = 2;
+
+    private static final ParsedContentCodec<Location> CODEC = new ParsedContentCodec<Location>() {
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(Location content, DataOutput out) throws IOException {
+            out.writeDouble(content.mLatitude);
+            out.writeDouble(content.mLongitude);
+            ParsedContentDiskStore.writeString(out, content.mLabel);
+        }
+
+        @Override
+        public Location read(DataInput in) throws IOException {
+            Location location = new Location();
+            location.mLatitude = in.readDouble();
+            location.mLongitude = in.readDouble();
+            location.mLabel = ParsedContentDiskStore.readString(in);
+            return location;
+        }
+    };
+
     private final Picasso mPicasso;
     private final Transformation mTransform;
 
     public LocationCellFactory(Context context, Picasso picasso) {
-        super(256 * 1024);
         mPicasso = picasso;
         float radius = context.getResources().getDimension(R.dimen.atlas_message_item_cell_radius);
         mTransform = new RoundedTransform(radius);
@@ -60,6 +91,11 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
         return LocationCellFactory.isType(message);
     }
 
+    @Override
+    public boolean isBindableByShape() {
+        return true;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         return new CellHolder(layoutInflater.inflate(R.layout.atlas_message_item_cell_image, cellView, true));
@@ -68,13 +104,27 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
     @Override
     public Location parseContent(LayerClient layerClient, ParticipantProvider participantProvider, Message message) {
         try {
-            JSONObject o = new JSONObject(new String(message.getMessageParts().get(0).getData()));
+            FlatJsonReader reader = new FlatJsonReader(message.getMessageParts().get(0).getData());
             Location c = new Location();
-            c.mLatitude = o.optDouble(KEY_LATITUDE, 0);
-            c.mLongitude = o.optDouble(KEY_LONGITUDE, 0);
-            c.mLabel = o.optString(KEY_LABEL, null);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.selectName(JSON_NAMES)) {
+                    case JSON_LATITUDE:
+                        c.mLatitude = reader.nextDouble();
+                        break;
+                    case JSON_LONGITUDE:
+                        c.mLongitude = reader.nextDouble();
+                        break;
+                    case JSON_LABEL:
+                        c.mLabel = reader.nextNull() ? null : reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
             return c;
-        } catch (JSONException e) {
+        } catch (IOException e) {
             if (Log.isLoggable(Log.ERROR)) {
                 Log.e(e.getMessage(), e);
             }
@@ -82,6 +132,11 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
         return null;
     }
 
+    @Override
+    public ParsedContentCodec<Location> getParsedContentCodec() {
+        return CODEC;
+    }
+
     @Override
     public void bindCellHolder(final CellHolder cellHolder, final Location location, Message message, CellHolderSpecs specs) {
         cellHolder.mImageView.setTag(location);
@@ -138,7 +193,7 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
 
         @Override
         public int sizeOf() {
-            return (mLabel == null ? 0 : mLabel.getBytes().length) + ((Double.SIZE + Double.SIZE) / Byte.SIZE);
+            return ContentSize.of(mLabel) + ContentSize.DOUBLE_BYTES * 2;
         }
     }
 
@@ -15,6 +15,7 @@ import android.widget.ImageView;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ContentSize;
 import com.layer.atlas.provider.ParticipantProvider;
 import com.layer.atlas.util.imagepopup.AtlasImagePopupActivity;
 import com.layer.atlas.util.picasso.transformations.RoundedTransform;
@@ -40,7 +41,6 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
     private final Transformation mTransform;
 
     public SinglePartImageCellFactory(Activity activity, LayerClient layerClient, Picasso picasso) {
-        super(256 * 1024);
         mActivity = new WeakReference<Activity>(activity);
         mLayerClient = layerClient;
         mPicasso = picasso;
@@ -53,6 +53,11 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
         return SinglePartImageCellFactory.isType(message);
     }
 
+    @Override
+    public boolean isBindableByShape() {
+        return true;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         return new CellHolder(layoutInflater.inflate(R.layout.atlas_message_item_cell_image, cellView, true));
@@ -154,7 +159,7 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
 
         @Override
         public int sizeOf() {
-            return mId.toString().getBytes().length;
+            return ContentSize.of(mId.toString());
         }
     }
 }
@@ -15,6 +15,8 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ContentSize;
+import com.layer.atlas.messagetypes.MessagePreviewProvider;
 import com.layer.atlas.messagetypes.text.TextCellFactory;
 import com.layer.atlas.provider.Participant;
 import com.layer.atlas.provider.ParticipantProvider;
@@ -31,7 +33,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class NotificationCellFactory extends AtlasCellFactory<NotificationCellFactory.CellHolder, NotificationCellFactory.TextInfo> implements View.OnLongClickListener
+public class NotificationCellFactory extends AtlasCellFactory<NotificationCellFactory.CellHolder, NotificationCellFactory.TextInfo> implements View.OnLongClickListener, MessagePreviewProvider
 {
 	// PROPERTIES
 	//================================================================================
@@ -41,7 +43,6 @@ public class NotificationCellFactory extends AtlasCellFactory<NotificationCellFa
 	//================================================================================
 	public NotificationCellFactory()
 	{
-		super(256 * 1024);
 	}
 
 	public static boolean isType(Message message)
@@ -57,6 +58,27 @@ public class NotificationCellFactory extends AtlasCellFactory<NotificationCellFa
 	}
 
 
+	// MESSAGE PREVIEW PROVIDER
+	//================================================================================
+	@Override
+	public boolean isPreviewable(Message message)
+	{
+		return NotificationCellFactory.isType(message);
+	}
+
+	@Override
+	public boolean isPreviewableByShape()
+	{
+		return true;
+	}
+
+	@Override
+	public String getPreview(Context context, Message message)
+	{
+		return getMessagePreview(context, message);
+	}
+
+
 	// OVERRIDE ATLAS CELL FACTORY
 	//================================================================================
 	@Override
@@ -65,6 +87,12 @@ public class NotificationCellFactory extends AtlasCellFactory<NotificationCellFa
 		return NotificationCellFactory.isType(message);
 	}
 
+	@Override
+	public boolean isBindableByShape()
+	{
+		return true;
+	}
+
 	@Override
 	public void bindCellHolder(CellHolder cellHolder, TextInfo parsed, Message message, CellHolderSpecs specs)
 	{
@@ -143,7 +171,7 @@ public class NotificationCellFactory extends AtlasCellFactory<NotificationCellFa
 		{
 			mString = string;
 			mClipboardPrefix = clipboardPrefix;
-			mSize = mString.getBytes().length + mClipboardPrefix.getBytes().length;
+			mSize = ContentSize.of(mString) + ContentSize.of(mClipboardPrefix);
 		}
 
 		public String getString()
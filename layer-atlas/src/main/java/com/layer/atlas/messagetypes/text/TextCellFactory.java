@@ -1,29 +1,119 @@
 package com.layer.atlas.messagetypes.text;
 
 import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.Typeface;
 import android.graphics.drawable.GradientDrawable;
-import android.util.TypedValue;
+import android.os.Process;
+import android.text.SpannableString;
+import android.text.TextPaint;
+import android.text.util.Linkify;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 import android.widget.Toast;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ContentSize;
+import com.layer.atlas.messagetypes.MessageStyle;
+import com.layer.atlas.messagetypes.ParsedContentCodec;
+import com.layer.atlas.messagetypes.ParsedContentDiskStore;
 import com.layer.atlas.provider.Participant;
 import com.layer.atlas.provider.ParticipantProvider;
+import com.layer.atlas.util.Log;
+import com.layer.atlas.util.Utf8StreamDecoder;
 import com.layer.atlas.util.Util;
+import com.layer.atlas.util.views.PrecomputedTextLayout;
+import com.layer.atlas.util.views.TextLayoutView;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Actor;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.messaging.MessagePart;
 
-public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder, TextCellFactory.TextInfo> implements View.OnLongClickListener {
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TextCellFactory renders text/plain Messages.  Link detection and line breaking happen while
+ * parsing content off the main thread: each TextInfo carries a PrecomputedTextLayout for the text
+ * width last seen while binding, which a TextLayoutView draws without measuring again.  Layouts
+ * are rebuilt on the main thread only when the width or MessageStyle changes.
+ *
+ * Text is decoded as a stream, and only up to the preview length.  Tapping a truncated Message
+ * loads and lays out the rest in the background.
+ */
+public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder, TextCellFactory.TextInfo> implements View.OnClickListener, View.OnLongClickListener {
     public final static String MIME_TYPE = "text/plain";
 
+    public static final int DEFAULT_PREVIEW_LENGTH = 4096;
+
+    // Conversation list previews show a line or two.
+    private static final int MESSAGE_PREVIEW_LENGTH = 256;
+
+    private static final String ELLIPSIS = "\u2026";
+
+    private static ThreadPoolExecutor sExpandExecutor;
+
+    private final ParsedContentCodec<TextInfo> mCodec = new ParsedContentCodec<TextInfo>() {
+        @Override
+        public int getVersion() {
+            return 3;
+        }
+
+        @Override
+        public void write(TextInfo content, DataOutput out) throws IOException {
+            ParsedContentDiskStore.writeString(out, content.getString());
+            ParsedContentDiskStore.writeString(out, content.getClipboardPrefix());
+            out.writeBoolean(content.isMe());
+            out.writeBoolean(content.isTruncated());
+        }
+
+        @Override
+        public TextInfo read(DataInput in) throws IOException {
+            String string = ParsedContentDiskStore.readString(in);
+            String clipboardPrefix = ParsedContentDiskStore.readString(in);
+            boolean isMe = in.readBoolean();
+            return createTextInfo(string, clipboardPrefix, isMe, in.readBoolean());
+        }
+    };
+
+    // Paints derived from mMessageStyle, guarded by mPaintLock.
+    private final Object mPaintLock = new Object();
+    private MessageStyle mPaintStyle;
+    private TextPaint mMyPaint;
+    private TextPaint mOtherPaint;
+
+    // Text widths from the most recent binds, or 0 before the first bind.
+    private volatile int mMyTextWidth;
+    private volatile int mOtherTextWidth;
+
+    private volatile int mPreviewLength = DEFAULT_PREVIEW_LENGTH;
+
     public TextCellFactory() {
-        super(256 * 1024);
+    }
+
+    /**
+     * Sets the number of characters decoded for display before a Message is expanded.
+     *
+     * @param previewLength Maximum characters to decode, or Utf8StreamDecoder.NO_LIMIT.
+     * @return This TextCellFactory.
+     */
+    public TextCellFactory setPreviewLength(int previewLength) {
+        if (previewLength <= 0) throw new IllegalArgumentException("Preview length must be positive");
+        mPreviewLength = previewLength;
+        return this;
+    }
+
+    public int getPreviewLength() {
+        return mPreviewLength;
     }
 
     public static boolean isType(Message message) {
@@ -33,7 +123,23 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
     public static String getMessagePreview(Context context, Message message) {
         MessagePart part = message.getMessageParts().get(0);
         // For large text content, the MessagePart may not be downloaded yet.
-        return part.isContentReady() ? new String(part.getData()) : "";
+        if (!part.isContentReady()) return "";
+        Utf8StreamDecoder decoded = decode(part, MESSAGE_PREVIEW_LENGTH);
+        return decoded == null ? "" : decoded.getText();
+    }
+
+    /**
+     * Decodes up to `maxChars` of a text MessagePart, or returns `null` if it cannot be read.
+     */
+    private static Utf8StreamDecoder decode(MessagePart part, int maxChars) {
+        InputStream in = part.getDataStream();
+        if (in == null) return null;
+        try {
+            return Utf8StreamDecoder.decode(in, maxChars);
+        } catch (IOException e) {
+            if (Log.isLoggable(Log.ERROR)) Log.e("Could not decode " + part.getId(), e);
+            return null;
+        }
     }
 
     @Override
@@ -41,24 +147,23 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
         return TextCellFactory.isType(message);
     }
 
+    @Override
+    public boolean isBindableByShape() {
+        return true;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
-        View v = layoutInflater.inflate(R.layout.atlas_message_item_cell_text, cellView, true);
+        View v = layoutInflater.inflate(R.layout.atlas_message_item_cell_text_layout, cellView, true);
         v.setBackgroundResource(isMe ? R.drawable.atlas_message_item_cell_me : R.drawable.atlas_message_item_cell_them);
         ((GradientDrawable) v.getBackground()).setColor(isMe ? mMessageStyle.getMyBubbleColor() : mMessageStyle.getOtherBubbleColor());
-
-        TextView t = (TextView) v.findViewById(R.id.cell_text);
-        t.setTextSize(TypedValue.COMPLEX_UNIT_PX, isMe ? mMessageStyle.getMyTextSize() : mMessageStyle.getOtherTextSize());
-        t.setTextColor(isMe ? mMessageStyle.getMyTextColor() : mMessageStyle.getOtherTextColor());
-        t.setLinkTextColor(isMe ? mMessageStyle.getMyTextColor() : mMessageStyle.getOtherTextColor());
-        t.setTypeface(isMe ? mMessageStyle.getMyTextTypeface() : mMessageStyle.getOtherTextTypeface(), isMe ? mMessageStyle.getMyTextStyle() : mMessageStyle.getOtherTextStyle());
         return new CellHolder(v);
     }
 
     @Override
     public TextInfo parseContent(LayerClient layerClient, ParticipantProvider participantProvider, Message message) {
         MessagePart part = message.getMessageParts().get(0);
-        String text = part.isContentReady() ? new String(part.getData()) : "";
+        Utf8StreamDecoder decoded = part.isContentReady() ? decode(part, mPreviewLength) : null;
         String name;
         Actor sender = message.getSender();
         if (sender.getName() != null) {
@@ -67,45 +172,248 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
             Participant participant = participantProvider.getParticipant(sender.getUserId());
             name = participant == null ? "" : (participant.getName() + ": ");
         }
-        return new TextInfo(text, name);
+        boolean isMe = sender.getUserId() != null && sender.getUserId().equals(layerClient.getAuthenticatedUserId());
+        if (decoded == null) return createTextInfo("", name, isMe, false);
+        return createTextInfo(decoded.getText(), name, isMe, decoded.isTruncated());
+    }
+
+    @Override
+    public ParsedContentCodec<TextInfo> getParsedContentCodec() {
+        return mCodec;
+    }
+
+    @Override
+    public void setStyle(MessageStyle messageStyle) {
+        super.setStyle(messageStyle);
+        synchronized (mPaintLock) {
+            mPaintStyle = null;
+        }
+    }
+
+    @Override
+    protected boolean isPersistable(Message message, TextInfo content) {
+        // Text parsed before the part downloaded is a placeholder.
+        return message.getMessageParts().get(0).isContentReady();
     }
 
     @Override
     public void bindCellHolder(CellHolder cellHolder, final TextInfo parsed, Message message, CellHolderSpecs specs) {
-        cellHolder.mTextView.setText(parsed.getString());
-        cellHolder.mTextView.setTag(parsed);
+        // TextInfos from the public constructor do not know the sender, so go by the specs.
+        int width = specs.maxWidth - cellHolder.mHorizontalPadding;
+        if (specs.isMe) {
+            mMyTextWidth = width;
+        } else {
+            mOtherTextWidth = width;
+        }
+        TextPaint paint = getPaint(specs.isMe);
+        PrecomputedTextLayout layout = parsed.getLayout();
+        if (layout == null || !layout.matches(paint, width)) {
+            // Not precomputed for this width and style; lay out now and keep it for next time.
+            layout = PrecomputedTextLayout.build(parsed.getText(), paint, width);
+            parsed.setLayout(layout);
+        }
+        cellHolder.mTextInfo = parsed;
+        cellHolder.mSpecs = specs;
+        cellHolder.mTextView.setTextLayout(layout);
+        cellHolder.mTextView.setTag(cellHolder);
         cellHolder.mTextView.setOnLongClickListener(this);
+        if (parsed.isTruncated()) {
+            cellHolder.mTextView.setOnClickListener(this);
+        } else {
+            cellHolder.mTextView.setOnClickListener(null);
+            cellHolder.mTextView.setClickable(false);
+        }
+    }
+
+    /**
+     * Click on a truncated Message decodes and lays out the full text in the background, then
+     * rebinds the cell if it still shows that Message.
+     */
+    @Override
+    public void onClick(View v) {
+        final CellHolder cellHolder = (CellHolder) v.getTag();
+        final TextInfo parsed = cellHolder.mTextInfo;
+        final Message message = cellHolder.getMessage();
+        if (message == null || !parsed.isTruncated() || !parsed.mExpanding.compareAndSet(false, true)) return;
+        final View view = v;
+        getExpandExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                Utf8StreamDecoder decoded = decode(message.getMessageParts().get(0), Utf8StreamDecoder.NO_LIMIT);
+                if (decoded == null) {
+                    parsed.mExpanding.set(false);
+                    return;
+                }
+                final TextInfo expanded = createTextInfo(decoded.getText(), parsed.getClipboardPrefix(), cellHolder.mSpecs.isMe, false);
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        setParsedContent(message, expanded);
+                        if (cellHolder.getMessage() == message) {
+                            bindCellHolder(cellHolder, expanded, message, cellHolder.mSpecs);
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Long click copies message text and sender name to clipboard
+     * Long click copies message text and sender name to clipboard.  Truncated Messages are copied
+     * in full, reusing text expanded by onClick() or decoding it in the background.
      */
     @Override
     public boolean onLongClick(View v) {
-        TextInfo parsed = (TextInfo) v.getTag();
-        String text = parsed.getClipboardPrefix() + parsed.getString();
+        CellHolder cellHolder = (CellHolder) v.getTag();
+        final TextInfo parsed = cellHolder.mTextInfo;
+        final Message message = cellHolder.getMessage();
+        if (!parsed.isTruncated() || message == null) {
+            copyToClipboard(v, parsed.getClipboardPrefix() + parsed.getString());
+            return true;
+        }
+
+        TextInfo cached = peekParsedContent(message);
+        if (cached != null && !cached.isTruncated()) {
+            copyToClipboard(v, cached.getClipboardPrefix() + cached.getString());
+            return true;
+        }
+
+        final View view = v;
+        getExpandExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                Utf8StreamDecoder decoded = decode(message.getMessageParts().get(0), Utf8StreamDecoder.NO_LIMIT);
+                final String string = decoded == null ? parsed.getString() : decoded.getText();
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        copyToClipboard(view, parsed.getClipboardPrefix() + string);
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    private static void copyToClipboard(View v, String text) {
         Util.copyToClipboard(v.getContext(), R.string.atlas_text_cell_factory_clipboard_description, text);
         Toast.makeText(v.getContext(), R.string.atlas_text_cell_factory_copied_to_clipboard, Toast.LENGTH_SHORT).show();
-        return true;
     }
 
+    //==============================================================================================
+    // Precomputed layouts
+    //==============================================================================================
+
+    /**
+     * Detects links and, once a text width is known, lays out the text.  Safe to call on any
+     * thread.
+     */
+    private TextInfo createTextInfo(String string, String clipboardPrefix, boolean isMe, boolean truncated) {
+        CharSequence text = truncated ? string + ELLIPSIS : string;
+        SpannableString spannable = new SpannableString(text);
+        if (Linkify.addLinks(spannable, Linkify.ALL)) text = spannable;
+
+        int width = isMe ? mMyTextWidth : mOtherTextWidth;
+        TextPaint paint = mMessageStyle == null ? null : getPaint(isMe);
+        PrecomputedTextLayout layout = (width > 0 && paint != null) ? PrecomputedTextLayout.build(text, paint, width) : null;
+        return new TextInfo(string, clipboardPrefix, isMe, truncated, text, layout);
+    }
+
+    private static synchronized ThreadPoolExecutor getExpandExecutor() {
+        if (sExpandExecutor == null) {
+            sExpandExecutor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "AtlasTextExpander");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sExpandExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExpandExecutor;
+    }
+
+    /**
+     * Returns the TextPaint for my or other users' Messages, rebuilding both when the MessageStyle
+     * changes.  The returned TextPaint is never modified, so layouts built with it stay valid.
+     */
+    private TextPaint getPaint(boolean isMe) {
+        synchronized (mPaintLock) {
+            if (mPaintStyle != mMessageStyle) {
+                mPaintStyle = mMessageStyle;
+                mMyPaint = createPaint(mPaintStyle.getMyTextSize(), mPaintStyle.getMyTextColor(), mPaintStyle.getMyTextTypeface(), mPaintStyle.getMyTextStyle());
+                mOtherPaint = createPaint(mPaintStyle.getOtherTextSize(), mPaintStyle.getOtherTextColor(), mPaintStyle.getOtherTextTypeface(), mPaintStyle.getOtherTextStyle());
+            }
+            return isMe ? mMyPaint : mOtherPaint;
+        }
+    }
+
+    /**
+     * Creates a TextPaint matching TextView's setTextSize(), setTextColor(), setLinkTextColor(),
+     * and setTypeface(Typeface, int), including synthetic bold and italic.
+     */
+    private static TextPaint createPaint(float textSize, int textColor, Typeface typeface, int style) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(textSize);
+        paint.setColor(textColor);
+        paint.linkColor = textColor;
+        if (style > 0) {
+            typeface = typeface == null ? Typeface.defaultFromStyle(style) : Typeface.create(typeface, style);
+            int missing = style & ~(typeface == null ? 0 : typeface.getStyle());
+            paint.setFakeBoldText((missing & Typeface.BOLD) != 0);
+            paint.setTextSkewX((missing & Typeface.ITALIC) != 0 ? -0.25f : 0);
+        }
+        paint.setTypeface(typeface);
+        return paint;
+    }
+
+
+    //==============================================================================================
+    // Inner classes
+    //==============================================================================================
+
     public static class CellHolder extends AtlasCellFactory.CellHolder {
-        TextView mTextView;
+        TextLayoutView mTextView;
+        int mHorizontalPadding;
+        TextInfo mTextInfo;
+        CellHolderSpecs mSpecs;
 
         public CellHolder(View view) {
-            mTextView = (TextView) view.findViewById(R.id.cell_text);
+            mTextView = (TextLayoutView) view.findViewById(R.id.cell_text);
+            mHorizontalPadding = view.getPaddingLeft() + view.getPaddingRight();
         }
     }
 
     public static class TextInfo implements AtlasCellFactory.ParsedContent {
         private final String mString;
         private final String mClipboardPrefix;
+        private final boolean mIsMe;
+        private final boolean mTruncated;
+        private final AtomicBoolean mExpanding = new AtomicBoolean();
+        private final CharSequence mText;
         private final int mSize;
+        private volatile PrecomputedTextLayout mLayout;
 
         public TextInfo(String string, String clipboardPrefix) {
+            this(string, clipboardPrefix, false, false, string, null);
+        }
+
+        TextInfo(String string, String clipboardPrefix, boolean isMe, boolean truncated, CharSequence text, PrecomputedTextLayout layout) {
             mString = string;
             mClipboardPrefix = clipboardPrefix;
-            mSize = mString.getBytes().length + mClipboardPrefix.getBytes().length;
+            mIsMe = isMe;
+            mTruncated = truncated;
+            mText = text;
+            mLayout = layout;
+            // Layouts replaced while binding are close enough in size to the one charged here.
+            mSize = ContentSize.of(mString) + ContentSize.of(mClipboardPrefix) + (truncated ? ContentSize.of(text) : 0) + (layout == null ? 0 : layout.sizeOf());
         }
 
         public String getString() {
@@ -116,6 +424,32 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
             return mClipboardPrefix;
         }
 
+        /**
+         * Returns the String with detected links as ClickableSpans.
+         */
+        public CharSequence getText() {
+            return mText;
+        }
+
+        public boolean isMe() {
+            return mIsMe;
+        }
+
+        /**
+         * Returns `true` if getString() is a preview of a longer Message.
+         */
+        public boolean isTruncated() {
+            return mTruncated;
+        }
+
+        PrecomputedTextLayout getLayout() {
+            return mLayout;
+        }
+
+        void setLayout(PrecomputedTextLayout layout) {
+            mLayout = layout;
+        }
+
         @Override
         public int sizeOf() {
             return mSize;
@@ -1,6 +1,7 @@
 package com.layer.atlas.messagetypes.threepartimage;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -10,6 +11,7 @@ import android.provider.MediaStore;
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AttachmentSender;
 import com.layer.atlas.util.Log;
+import com.layer.atlas.util.TempFileStore;
 import com.layer.sdk.messaging.Message;
 
 import java.io.File;
@@ -69,14 +71,24 @@ public class CameraSender extends AttachmentSender {
             return true;
         }
         if (Log.isLoggable(Log.VERBOSE)) Log.v("Received camera response");
-        try {
-            String myName = getParticipantProvider().getParticipant(getLayerClient().getAuthenticatedUserId()).getName();
-            Message message = ThreePartImageUtils.newThreePartImageMessage(activity, getLayerClient(), new File(mPhotoFilePath.get()));
-            message.getOptions().pushNotificationMessage(getContext().getString(R.string.atlas_notification_image, myName));
-            send(message);
-        } catch (IOException e) {
-            if (Log.isLoggable(Log.ERROR)) Log.e(e.getMessage(), e);
-        }
+        final File file = new File(mPhotoFilePath.get());
+        final Context context = activity.getApplicationContext();
+        final String myName = getParticipantProvider().getParticipant(getLayerClient().getAuthenticatedUserId()).getName();
+        ImageSendQueue.getInstance().enqueue(this, getConversation(), new ImageSendQueue.Task() {
+            @Override
+            public Message create() throws IOException {
+                return ThreePartImageUtils.newThreePartImageMessage(context, getLayerClient(), file);
+            }
+
+            @Override
+            public boolean send(Message message) {
+                message.getOptions().pushNotificationMessage(context.getString(R.string.atlas_notification_image, myName));
+                boolean sent = CameraSender.this.send(message);
+                // Sending persists the MessageParts, so temp copies are no longer needed.
+                TempFileStore.getInstance(context).release(message);
+                return sent;
+            }
+        });
         return true;
     }
 
@@ -3,13 +3,16 @@ package com.layer.atlas.messagetypes.threepartimage;
 import android.Manifest;
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Build;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AttachmentSender;
 import com.layer.atlas.util.Log;
+import com.layer.atlas.util.TempFileStore;
 import com.layer.sdk.messaging.Message;
 
 import java.io.IOException;
@@ -77,14 +80,24 @@ public class GallerySender extends AttachmentSender {
             return true;
         }
         if (Log.isLoggable(Log.VERBOSE)) Log.v("Received gallery response");
-        try {
-            String myName = getParticipantProvider().getParticipant(getLayerClient().getAuthenticatedUserId()).getName();
-            Message message = ThreePartImageUtils.newThreePartImageMessage(activity, getLayerClient(), data.getData());
-            message.getOptions().pushNotificationMessage(getContext().getString(R.string.atlas_notification_image, myName));
-            send(message);
-        } catch (IOException e) {
-            if (Log.isLoggable(Log.ERROR)) Log.e(e.getMessage(), e);
-        }
+        final Uri imageUri = data.getData();
+        final Context context = activity.getApplicationContext();
+        final String myName = getParticipantProvider().getParticipant(getLayerClient().getAuthenticatedUserId()).getName();
+        ImageSendQueue.getInstance().enqueue(this, getConversation(), new ImageSendQueue.Task() {
+            @Override
+            public Message create() throws IOException {
+                return ThreePartImageUtils.newThreePartImageMessage(context, getLayerClient(), imageUri);
+            }
+
+            @Override
+            public boolean send(Message message) {
+                message.getOptions().pushNotificationMessage(context.getString(R.string.atlas_notification_image, myName));
+                boolean sent = GallerySender.this.send(message);
+                // Sending persists the MessageParts, so temp copies are no longer needed.
+                TempFileStore.getInstance(context).release(message);
+                return sent;
+            }
+        });
         return true;
     }
 }
@@ -0,0 +1,118 @@
+package com.layer.atlas.messagetypes.threepartimage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.layer.atlas.messagetypes.MessageSender;
+import com.layer.atlas.messagetypes.PendingSend;
+import com.layer.atlas.util.Log;
+import com.layer.sdk.messaging.Conversation;
+import com.layer.sdk.messaging.Message;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImageSendQueue creates image Messages on a background thread, one at a time, so decoding,
+ * scaling, and compressing never block the main thread.  Each image is tracked by a PendingSend;
+ * at most MAX_QUEUED images wait behind the one being processed, and further images fail
+ * immediately rather than piling up full-resolution work.
+ */
+final class ImageSendQueue {
+    static final int MAX_QUEUED = 8;
+
+    private static final ImageSendQueue sInstance = new ImageSendQueue();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+
+    private ImageSendQueue() {
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "AtlasImageSender");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    static ImageSendQueue getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Queues a Task, returning its PendingSend.  Must be called on the main thread.
+     *
+     * @param sender       MessageSender creating the Message.
+     * @param conversation Conversation the Message will be sent to.
+     * @param task         Task creating and sending the Message.
+     * @return The Task's PendingSend, already FAILED if the queue is full.
+     */
+    PendingSend enqueue(MessageSender sender, Conversation conversation, final Task task) {
+        final PendingSend pendingSend = new PendingSend(sender, conversation);
+        pendingSend.update(PendingSend.State.QUEUED);
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    process(pendingSend, task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingSend.fail(new IllegalStateException("Too many images queued for sending", e));
+        }
+        return pendingSend;
+    }
+
+    private void process(final PendingSend pendingSend, final Task task) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                pendingSend.update(PendingSend.State.PROCESSING);
+            }
+        });
+        try {
+            final Message message = task.create();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    pendingSend.update(task.send(message) ? PendingSend.State.SENT : PendingSend.State.ABORTED);
+                }
+            });
+        } catch (final Exception e) {
+            if (Log.isLoggable(Log.ERROR)) Log.e(e.getMessage(), e);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    pendingSend.fail(e);
+                }
+            });
+        }
+    }
+
+    interface Task {
+        /**
+         * Creates the Message.  Called on the background thread.
+         */
+        Message create() throws Exception;
+
+        /**
+         * Sends the created Message.  Called on the main thread.
+         *
+         * @return `true` if the Message was sent, or `false` if sending was aborted.
+         */
+        boolean send(Message message);
+    }
+}
@@ -0,0 +1,142 @@
+package com.layer.atlas.messagetypes.threepartimage;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.os.Build;
+
+import com.layer.atlas.util.ImageSizing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * PreviewEncoder creates ThreePartImage previews in memory.  Images are decoded directly at the
+ * preview size where the platform supports it, and compressed into a reused buffer with the EXIF
+ * orientation written inline, so no temp file or ExifInterface round trip is needed.
+ */
+final class PreviewEncoder {
+    // Initial compression buffer; grows to fit the largest preview encoded so far.
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    // "Exif\0\0", then a big-endian TIFF header whose IFD0 starts right after it.
+    private static final byte[] EXIF_HEADER = {
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8
+    };
+    private static final int EXIF_TAG_ORIENTATION = 0x0112;
+    private static final int EXIF_TYPE_SHORT = 3;
+
+    // Length field + header + entry count + one 12-byte entry + next-IFD offset.
+    private static final int EXIF_SEGMENT_LENGTH = 2 + EXIF_HEADER.length + 2 + 12 + 4;
+
+    private static final Object sBufferLock = new Object();
+    private static final Buffer sBuffer = new Buffer(INITIAL_BUFFER_SIZE);
+
+    private PreviewEncoder() {
+    }
+
+    /**
+     * Decodes the image at `path` to exactly `width` x `height`.  The image is subsampled while
+     * decoding; on API 19+ the remaining scale is applied by the decoder as well, and older
+     * platforms scale the subsampled Bitmap once.
+     *
+     * @param path       Image file path.
+     * @param fullWidth  Full image width.
+     * @param fullHeight Full image height.
+     * @param width      Target width.
+     * @param height     Target height.
+     * @return The decoded Bitmap.
+     * @throws IOException if the image cannot be decoded.
+     */
+    static Bitmap decode(String path, int fullWidth, int fullHeight, int width, int height) throws IOException {
+        int sampleSize = ImageSizing.getSampleSize(fullWidth, fullHeight, width, height);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        int sampledWidth = fullWidth / sampleSize;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && sampledWidth > width) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = width;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null) throw new IOException("Could not decode " + path);
+        if (bitmap.getWidth() == width && bitmap.getHeight() == height) return bitmap;
+
+        // Density scaling rounds, or was unavailable; finish with one exact scale.
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    /**
+     * Compresses `bitmap` as JPEG, inserting an EXIF orientation tag unless `exifOrientation` is
+     * ORIENTATION_UNDEFINED.
+     *
+     * @param bitmap          Bitmap to compress.
+     * @param quality         JPEG quality, 0-100.
+     * @param exifOrientation ExifInterface orientation to record.
+     * @return The JPEG bytes.
+     * @throws IOException if compression fails.
+     */
+    static byte[] compress(Bitmap bitmap, int quality, int exifOrientation) throws IOException {
+        synchronized (sBufferLock) {
+            sBuffer.reset();
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, sBuffer)) {
+                throw new IOException("Could not compress preview");
+            }
+            return sBuffer.toJpeg(exifOrientation);
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream that copies its contents out once, with an EXIF segment spliced in.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] toJpeg(int exifOrientation) throws IOException {
+            if (count < 4 || (buf[0] & 0xFF) != 0xFF || (buf[1] & 0xFF) != 0xD8) throw new IOException("Not a JPEG");
+            if (exifOrientation == ExifInterface.ORIENTATION_UNDEFINED) return toByteArray();
+
+            // JFIF requires its APP0 segment first, so place EXIF after it when present.
+            int insertAt = 2;
+            if ((buf[2] & 0xFF) == 0xFF && (buf[3] & 0xFF) == 0xE0 && count >= 6) {
+                insertAt = 4 + (((buf[4] & 0xFF) << 8) | (buf[5] & 0xFF));
+                if (insertAt > count) throw new IOException("Malformed JPEG");
+            }
+
+            byte[] jpeg = new byte[count + 2 + EXIF_SEGMENT_LENGTH];
+            System.arraycopy(buf, 0, jpeg, 0, insertAt);
+            int i = insertAt;
+            jpeg[i++] = (byte) 0xFF;
+            jpeg[i++] = (byte) 0xE1;
+            i = putShort(jpeg, i, EXIF_SEGMENT_LENGTH);
+            System.arraycopy(EXIF_HEADER, 0, jpeg, i, EXIF_HEADER.length);
+            i += EXIF_HEADER.length;
+            i = putShort(jpeg, i, 1);
+            i = putShort(jpeg, i, EXIF_TAG_ORIENTATION);
+            i = putShort(jpeg, i, EXIF_TYPE_SHORT);
+            i = putInt(jpeg, i, 1);
+            i = putShort(jpeg, i, exifOrientation);
+            i = putShort(jpeg, i, 0);
+            i = putInt(jpeg, i, 0);
+            System.arraycopy(buf, insertAt, jpeg, i, count - insertAt);
+            return jpeg;
+        }
+
+        private static int putShort(byte[] b, int i, int value) {
+            b[i] = (byte) (value >> 8);
+            b[i + 1] = (byte) value;
+            return i + 2;
+        }
+
+        private static int putInt(byte[] b, int i, int value) {
+            putShort(b, i, value >> 16);
+            return putShort(b, i + 2, value);
+        }
+    }
+}
@@ -18,7 +18,11 @@ import android.widget.ImageView;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ContentSize;
+import com.layer.atlas.messagetypes.ParsedContentCodec;
+import com.layer.atlas.messagetypes.ParsedContentDiskStore;
 import com.layer.atlas.provider.ParticipantProvider;
+import com.layer.atlas.util.FlatJsonReader;
 import com.layer.atlas.util.Log;
 import com.layer.atlas.util.Util;
 import com.layer.atlas.util.imagepopup.AtlasImagePopupActivity;
@@ -31,29 +35,66 @@ import com.squareup.picasso.Picasso;
 import com.squareup.picasso.RequestCreator;
 import com.squareup.picasso.Transformation;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.List;
 
 /**
  * ThreePartImage handles image Messages with three parts: full image, preview image, and
  * image metadata.  The image metadata contains full image dimensions and rotation information used
- * for sizing and rotating images efficiently.
+ * for sizing and rotating images efficiently.  Messages may carry a fourth thumbnail part, which
+ * is loaded instead of the preview when it is large enough for the cell.
+ *
+ * @see ThreePartImageUtils#setThumbnailPartEnabled(boolean)
  */
 public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCellFactory.CellHolder, ThreePartImageCellFactory.Info> implements View.OnClickListener {
     private static final String PICASSO_TAG = ThreePartImageCellFactory.class.getSimpleName();
 
     private static final int PLACEHOLDER = R.drawable.atlas_message_item_cell_placeholder;
 
+    private static final byte[][] INFO_NAMES = FlatJsonReader.names("orientation", "width", "height");
+    private static final int INFO_ORIENTATION = 0;
+    private static final int INFO_WIDTH = 1;
+    private static final int INFO_HEIGHT = 2;
+
+    private static final ParsedContentCodec<Info> CODEC = new ParsedContentCodec<Info>() {
+        @Override
+        public int getVersion() {
+            return 2;
+        }
+
+        @Override
+        public void write(Info content, DataOutput out) throws IOException {
+            out.writeInt(content.orientation);
+            out.writeInt(content.width);
+            out.writeInt(content.height);
+            ParsedContentDiskStore.writeString(out, content.fullPartId.toString());
+            ParsedContentDiskStore.writeString(out, content.previewPartId.toString());
+            ParsedContentDiskStore.writeString(out, content.thumbnailPartId == null ? "" : content.thumbnailPartId.toString());
+        }
+
+        @Override
+        public Info read(DataInput in) throws IOException {
+            Info info = new Info();
+            info.orientation = in.readInt();
+            info.width = in.readInt();
+            info.height = in.readInt();
+            info.fullPartId = Uri.parse(ParsedContentDiskStore.readString(in));
+            info.previewPartId = Uri.parse(ParsedContentDiskStore.readString(in));
+            String thumbnailPartId = ParsedContentDiskStore.readString(in);
+            info.thumbnailPartId = thumbnailPartId.length() == 0 ? null : Uri.parse(thumbnailPartId);
+            return info;
+        }
+    };
+
     private final WeakReference<Activity> mActivity;
     private final LayerClient mLayerClient;
     private final Picasso mPicasso;
     private final Transformation mTransform;
 
     public ThreePartImageCellFactory(Activity activity, LayerClient layerClient, Picasso picasso) {
-        super(256 * 1024);
         mActivity = new WeakReference<Activity>(activity);
         mLayerClient = layerClient;
         mPicasso = picasso;
@@ -66,6 +107,11 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         return ThreePartImageCellFactory.isType(message);
     }
 
+    @Override
+    public boolean isBindableByShape() {
+        return true;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         return new CellHolder(layoutInflater.inflate(R.layout.atlas_message_item_cell_image, cellView, true));
@@ -76,11 +122,15 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         return getInfo(message);
     }
 
+    @Override
+    public ParsedContentCodec<Info> getParsedContentCodec() {
+        return CODEC;
+    }
+
     @Override
     public void bindCellHolder(final CellHolder cellHolder, final Info info, final Message message, CellHolderSpecs specs) {
         cellHolder.mImageView.setTag(info);
         cellHolder.mImageView.setOnClickListener(this);
-        MessagePart preview = ThreePartImageUtils.getPreviewPart(message);
 
         // Info width and height are the rotated width and height, though the content is not pre-rotated.
         int[] cellDims = Util.scaleDownInside(info.width, info.height, specs.maxWidth, specs.maxHeight);
@@ -88,7 +138,7 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         params.width = cellDims[0];
         params.height = cellDims[1];
         cellHolder.mProgressBar.show();
-        RequestCreator creator = mPicasso.load(preview.getId()).tag(PICASSO_TAG).placeholder(PLACEHOLDER);
+        RequestCreator creator = mPicasso.load(getDisplayPartId(info, cellDims)).tag(PICASSO_TAG).placeholder(PLACEHOLDER);
         switch (info.orientation) {
             case ThreePartImageUtils.ORIENTATION_0:
                 creator.resize(cellDims[0], cellDims[1]);
@@ -138,6 +188,17 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         });
     }
 
+    /**
+     * Returns the smallest part covering the cell: the thumbnail when present and large enough,
+     * otherwise the preview.
+     */
+    private static Uri getDisplayPartId(Info info, int[] cellDims) {
+        if (info.thumbnailPartId == null) return info.previewPartId;
+        int[] thumbnailDims = Util.scaleDownInside(info.width, info.height, ThreePartImageUtils.THUMBNAIL_MAX_WIDTH, ThreePartImageUtils.THUMBNAIL_MAX_HEIGHT);
+        boolean covers = thumbnailDims[0] >= cellDims[0] && thumbnailDims[1] >= cellDims[1];
+        return covers ? info.thumbnailPartId : info.previewPartId;
+    }
+
     @Override
     public void onClick(View v) {
         AtlasImagePopupActivity.init(mLayerClient);
@@ -176,7 +237,8 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
 
     public static boolean isType(Message message) {
         List<MessagePart> parts = message.getMessageParts();
-        return parts.size() == 3 &&
+        int size = parts.size();
+        return (size == 3 || (size == 4 && parts.get(ThreePartImageUtils.PART_INDEX_THUMBNAIL).getMimeType().equals(ThreePartImageUtils.MIME_TYPE_THUMBNAIL))) &&
                 parts.get(ThreePartImageUtils.PART_INDEX_FULL).getMimeType().startsWith("image/") &&
                 parts.get(ThreePartImageUtils.PART_INDEX_PREVIEW).getMimeType().equals(ThreePartImageUtils.MIME_TYPE_PREVIEW) &&
                 parts.get(ThreePartImageUtils.PART_INDEX_INFO).getMimeType().equals(ThreePartImageUtils.MIME_TYPE_INFO);
@@ -189,14 +251,34 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
     public static Info getInfo(Message message) {
         try {
             Info info = new Info();
-            JSONObject infoObject = new JSONObject(new String(ThreePartImageUtils.getInfoPart(message).getData()));
-            info.orientation = infoObject.getInt("orientation");
-            info.width = infoObject.getInt("width");
-            info.height = infoObject.getInt("height");
+            FlatJsonReader reader = new FlatJsonReader(ThreePartImageUtils.getInfoPart(message).getData());
+            int found = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int name = reader.selectName(INFO_NAMES);
+                switch (name) {
+                    case INFO_ORIENTATION:
+                        info.orientation = reader.nextInt();
+                        break;
+                    case INFO_WIDTH:
+                        info.width = reader.nextInt();
+                        break;
+                    case INFO_HEIGHT:
+                        info.height = reader.nextInt();
+                        break;
+                    default:
+                        reader.skipValue();
+                        continue;
+                }
+                found |= 1 << name;
+            }
+            if (found != (1 << INFO_NAMES.length) - 1) throw new IOException("Missing image info fields");
             info.previewPartId = ThreePartImageUtils.getPreviewPart(message).getId();
             info.fullPartId = ThreePartImageUtils.getFullPart(message).getId();
+            MessagePart thumbnail = ThreePartImageUtils.getThumbnailPart(message);
+            info.thumbnailPartId = (thumbnail == null) ? null : thumbnail.getId();
             return info;
-        } catch (JSONException e) {
+        } catch (IOException e) {
             if (Log.isLoggable(Log.ERROR)) {
                 Log.e(e.getMessage(), e);
             }
@@ -215,10 +297,13 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         public int height;
         public Uri fullPartId;
         public Uri previewPartId;
+        // Null for Messages without a thumbnail part
+        public Uri thumbnailPartId;
 
         @Override
         public int sizeOf() {
-            return ((Integer.SIZE + Integer.SIZE + Integer.SIZE) / Byte.SIZE) + fullPartId.toString().getBytes().length + previewPartId.toString().getBytes().length;
+            int size = ContentSize.INT_BYTES * 3 + ContentSize.of(fullPartId.toString()) + ContentSize.of(previewPartId.toString());
+            return thumbnailPartId == null ? size : size + ContentSize.of(thumbnailPartId.toString());
         }
 
         @Override
@@ -1,23 +1,34 @@
 package com.layer.atlas.messagetypes.threepartimage;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.ExifInterface;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 
+import com.layer.atlas.util.ImageSizing;
 import com.layer.atlas.util.Log;
-import com.layer.atlas.util.Util;
+import com.layer.atlas.util.TempFileStore;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.messaging.MessagePart;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
 import java.util.Locale;
 
 public class ThreePartImageUtils 
@@ -33,15 +44,45 @@ public class ThreePartImageUtils
 
     public static final String MIME_TYPE_PREVIEW = "image/jpeg+preview";
     public static final String MIME_TYPE_INFO = "application/json+imageSize";
+    public static final String MIME_TYPE_THUMBNAIL = "image/jpeg+thumbnail";
 
     public static final int PART_INDEX_FULL = 0;
     public static final int PART_INDEX_PREVIEW = 1;
     public static final int PART_INDEX_INFO = 2;
+    public static final int PART_INDEX_THUMBNAIL = 3;
 
     public static final int PREVIEW_COMPRESSION_QUALITY = 75;
     public static final int PREVIEW_MAX_WIDTH = 512;
     public static final int PREVIEW_MAX_HEIGHT = 512;
 
+    public static final int THUMBNAIL_COMPRESSION_QUALITY = 70;
+    public static final int THUMBNAIL_MAX_WIDTH = 128;
+    public static final int THUMBNAIL_MAX_HEIGHT = 128;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static volatile boolean sThumbnailPartEnabled = false;
+
+    //CONFIGURATION
+    //================================================================================
+    /**
+     * Enables adding a fourth, thumbnail-sized part to new image Messages, generated in the same
+     * pass as the preview.  Cells showing small images load the thumbnail instead of the preview.
+     * Atlas versions before the thumbnail part only recognize three-part image Messages, so enable
+     * this once all clients in a deployment understand it.  Disabled by default.
+     *
+     * @param enabled `true` to add thumbnail parts.
+     */
+    public static void setThumbnailPartEnabled(boolean enabled)
+    {
+        sThumbnailPartEnabled = enabled;
+    }
+
+    public static boolean isThumbnailPartEnabled()
+    {
+        return sThumbnailPartEnabled;
+    }
+
     //MESSAGE PART HELPER
     //================================================================================
     public static MessagePart getInfoPart(Message message)
@@ -56,13 +97,40 @@ public class ThreePartImageUtils
     {
         return message.getMessageParts().get(PART_INDEX_FULL);
     }
+    /**
+     * Returns the thumbnail part, or `null` for Messages without one.
+     */
+    public static MessagePart getThumbnailPart(Message message)
+    {
+        List<MessagePart> parts = message.getMessageParts();
+        return parts.size() > PART_INDEX_THUMBNAIL ? parts.get(PART_INDEX_THUMBNAIL) : null;
+    }
 
     //LIFE CYCLE
     //================================================================================
     public static Message newThreePartImageMessage(Context context, LayerClient layerClient, Uri imageUri) throws IOException
     {
         File imageFile = getImageFile(context, imageUri);
-        return newThreePartImageMessage(context, layerClient, imageFile);
+        TempFileStore store = TempFileStore.getInstance(context);
+        if (imageFile == null || !store.isInUse(imageFile)) return newThreePartImageMessage(context, layerClient, imageFile);
+
+        // Copied into a temp file: keep it until the Message is released, or drop it on failure.
+        try
+        {
+            Message message = newThreePartImageMessage(context, layerClient, imageFile);
+            store.bind(imageFile, message);
+            return message;
+        }
+        catch (IOException e)
+        {
+            store.release(imageFile);
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            store.release(imageFile);
+            throw e;
+        }
     }
 
     public static Message newThreePartImageMessage(Context context, LayerClient layerClient, File imageFile) throws IOException
@@ -132,79 +200,176 @@ public class ThreePartImageUtils
 
         int fullWidth = justBounds.outWidth;
         int fullHeight = justBounds.outHeight;
-        MessagePart full = client.newMessagePart("image/jpeg", new FileInputStream(file), file.length());
+        if (fullWidth <= 0 || fullHeight <= 0) throw new IOException("Could not decode image bounds");
+        // Copied images keep their original encoding
+        String mimeType = (justBounds.outMimeType != null && justBounds.outMimeType.startsWith("image/")) ? justBounds.outMimeType : "image/jpeg";
+        MessagePart full = client.newMessagePart(mimeType, new FileInputStream(file), file.length());
 
         boolean isSwap = orientation == ORIENTATION_270 || orientation == ORIENTATION_90;
         String intoString = "{\"orientation\":" + orientation + ", \"width\":" + (!isSwap ? fullWidth : fullHeight) + ", \"height\":" + (!isSwap ? fullHeight : fullWidth) + "}";
         MessagePart info = client.newMessagePart(MIME_TYPE_INFO, intoString.getBytes());
         DebugLog.v(TAG, "Creating image info: " + intoString);
 
-        MessagePart preview;
         DebugLog.v(TAG, "Creating Preview from '" + file.getAbsolutePath() + "'");
 
         // Determine preview size
-        int[] previewDim = Util.scaleDownInside(fullWidth, fullHeight, PREVIEW_MAX_WIDTH, PREVIEW_MAX_HEIGHT);
+        int[] previewDim = ImageSizing.scaleDownInside(fullWidth, fullHeight, PREVIEW_MAX_WIDTH, PREVIEW_MAX_HEIGHT);
         DebugLog.v(TAG, "Preview size: " + previewDim[0] + "x" + previewDim[1]);
 
-        // Determine sample size for preview
-        int sampleSize = 1;
-        int sampleWidth = fullWidth;
-        int sampleHeight = fullHeight;
-        while (sampleWidth > previewDim[0] && sampleHeight > previewDim[1])
+        // Decode at preview size and compress in memory, preserving exif orientation
+        Bitmap previewBitmap = PreviewEncoder.decode(file.getAbsolutePath(), fullWidth, fullHeight, previewDim[0], previewDim[1]);
+        byte[] previewBytes;
+        byte[] thumbnailBytes = null;
+        try
         {
-            sampleWidth >>= 1;
-            sampleHeight >>= 1;
-            sampleSize <<= 1;
-        }
-
-        if (sampleSize != 1)
-            sampleSize >>= 1; // Back off 1 for scale-down instead of scale-up
-
-        BitmapFactory.Options previewOptions = new BitmapFactory.Options();
-        previewOptions.inSampleSize = sampleSize;
-
-        DebugLog.v(TAG, "Preview sampled size: " + (sampleWidth << 1) + "x" + (sampleHeight << 1));
-
-        // Create preview
-        Bitmap sampledBitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), previewOptions);
-        Bitmap previewBitmap = Bitmap.createScaledBitmap(sampledBitmap, previewDim[0], previewDim[1], true);
-
-        File temp = new File(context.getCacheDir(), KTThreePartImageUtils.class.getSimpleName() + "." + System.nanoTime() + ".jpg");
-        FileOutputStream previewStream = new FileOutputStream(temp);
-        DebugLog.v(TAG, "Compressing preview to '" + temp.getAbsolutePath() + "'");
+            previewBytes = PreviewEncoder.compress(previewBitmap, PREVIEW_COMPRESSION_QUALITY, exifOrientation);
 
-        previewBitmap.compress(Bitmap.CompressFormat.JPEG, PREVIEW_COMPRESSION_QUALITY, previewStream);
-        previewBitmap.recycle();
-        sampledBitmap.recycle();
-        previewStream.close();
-
-        // Preserve exif orientation
-        ExifInterface preserver = new ExifInterface(temp.getAbsolutePath());
-        preserver.setAttribute(ExifInterface.TAG_ORIENTATION, Integer.toString(exifOrientation));
-        preserver.saveAttributes();
-        DebugLog.v(TAG, "Exif orientation preserved in preview");
+            // Thumbnail from the decoded preview, sharing its single decode
+            if (sThumbnailPartEnabled)
+            {
+                int[] thumbnailDim = ImageSizing.scaleDownInside(fullWidth, fullHeight, THUMBNAIL_MAX_WIDTH, THUMBNAIL_MAX_HEIGHT);
+                DebugLog.v(TAG, "Thumbnail size: " + thumbnailDim[0] + "x" + thumbnailDim[1]);
+                Bitmap thumbnailBitmap = Bitmap.createScaledBitmap(previewBitmap, thumbnailDim[0], thumbnailDim[1], true);
+                try
+                {
+                    thumbnailBytes = PreviewEncoder.compress(thumbnailBitmap, THUMBNAIL_COMPRESSION_QUALITY, exifOrientation);
+                }
+                finally
+                {
+                    if (thumbnailBitmap != previewBitmap) thumbnailBitmap.recycle();
+                }
+            }
+        }
+        finally
+        {
+            previewBitmap.recycle();
+        }
 
-        preview = client.newMessagePart(MIME_TYPE_PREVIEW, new FileInputStream(temp), temp.length());
+        MessagePart preview = client.newMessagePart(MIME_TYPE_PREVIEW, previewBytes);
         DebugLog.v(TAG, String.format(Locale.US, "Full image bytes: %d, preview bytes: %d, info bytes: %d", full.getSize(), preview.getSize(), info.getSize()));
 
-        MessagePart[] parts = new MessagePart[3];
+        MessagePart[] parts = new MessagePart[thumbnailBytes == null ? 3 : 4];
         parts[PART_INDEX_FULL] = full;
         parts[PART_INDEX_PREVIEW] = preview;
         parts[PART_INDEX_INFO] = info;
+        if (thumbnailBytes != null)
+        {
+            parts[PART_INDEX_THUMBNAIL] = client.newMessagePart(MIME_TYPE_THUMBNAIL, thumbnailBytes);
+            DebugLog.v(TAG, "Thumbnail bytes: " + thumbnailBytes.length);
+        }
         return client.newMessage(parts);
     }
 
-    private static File getCloudImageFile(Context context, Uri imageUri) throws FileNotFoundException
+    /**
+     * Copies the image behind a content:// Uri into the cache directory byte for byte.  Channels
+     * move the data without decoding it; providers that cannot hand out a file descriptor are
+     * streamed instead.
+     */
+    private static File getCloudImageFile(Context context, Uri imageUri) throws IOException
     {
-        File f = new File(context.getCacheDir(), KTThreePartImageUtils.class.getSimpleName() + "." + System.nanoTime() + ".jpg");
-        FileOutputStream fileOutStream = new FileOutputStream(f);
+        TempFileStore store = TempFileStore.getInstance(context);
+        File f = store.newFile(".jpg");
+        ContentResolver resolver = context.getContentResolver();
+        boolean copied = false;
+        try
+        {
+            ParcelFileDescriptor descriptor = resolver.openFileDescriptor(imageUri, "r");
+            if (descriptor != null)
+            {
+                // The stream owns the descriptor and closes it with the channel.
+                copy(new ParcelFileDescriptor.AutoCloseInputStream(descriptor).getChannel(), f);
+                copied = true;
+            }
+        }
+        catch (FileNotFoundException e)
+        {
+            DebugLog.v(TAG, "No file descriptor for '" + imageUri + "', streaming instead");
+        }
+        catch (IOException e)
+        {
+            // Pipes and sockets are not seekable; fall back to streaming.
+            DebugLog.v(TAG, "Could not copy '" + imageUri + "' by descriptor: " + e);
+        }
 
-        InputStream inStream = context.getContentResolver().openInputStream(imageUri);
-        Bitmap bitmap = BitmapFactory.decodeStream(inStream);
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, fileOutStream);
+        if (!copied)
+        {
+            try
+            {
+                InputStream inStream = resolver.openInputStream(imageUri);
+                if (inStream == null) throw new FileNotFoundException("Could not open '" + imageUri + "'");
+                copy(Channels.newChannel(inStream), f);
+            }
+            catch (IOException e)
+            {
+                store.release(f);
+                throw e;
+            }
+        }
+        DebugLog.v(TAG, "Copied " + f.length() + " bytes from '" + imageUri + "'");
         return f;
     }
 
+    /**
+     * Copies `source` into `file` and closes `source`.  FileChannels transfer directly; other
+     * channels go through a single direct buffer.
+     */
+    private static void copy(ReadableByteChannel source, File file) throws IOException
+    {
+        FileOutputStream outStream = null;
+        try
+        {
+            outStream = new FileOutputStream(file);
+            FileChannel out = outStream.getChannel();
+            if (source instanceof FileChannel)
+            {
+                FileChannel in = (FileChannel) source;
+                long position = in.position();
+                long size = in.size() - position;
+                long done = 0;
+                while (done < size)
+                {
+                    long transferred = in.transferTo(position + done, size - done, out);
+                    if (transferred <= 0) break;
+                    done += transferred;
+                }
+                if (done < size) throw new IOException("Short copy: " + done + " of " + size + " bytes");
+            }
+            else
+            {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+                while (source.read(buffer) >= 0)
+                {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) out.write(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            file.delete();
+            throw e;
+        }
+        finally
+        {
+            closeQuietly(source);
+            closeQuietly(outStream);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable == null) return;
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            // Nothing to do
+        }
+    }
+
     private static File getImageFile(Context context, Uri imageUri) throws IOException
     {
         Cursor cursor = null;
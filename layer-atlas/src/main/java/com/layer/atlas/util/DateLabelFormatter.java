@@ -0,0 +1,205 @@
+package com.layer.atlas.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.layer.atlas.R;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * DateLabelFormatter produces the day and time labels shown in message time bars.  Dates are
+ * compared by local epoch-day rather than through a new Calendar per call, and day labels are
+ * cached in a tiny table keyed by epoch-day.  The cache and formats are dropped at local midnight
+ * and whenever the time, date, time zone, or locale changes, so labels like "Today" roll over
+ * without callers tracking time.  Safe to call from any thread.
+ */
+public final class DateLabelFormatter {
+    private static final long MILLIS_DAY = 24 * 60 * 60 * 1000;
+    private static final int DAYS_WEEK = 7;
+
+    // Epoch-day 0, January 1st 1970, was a Thursday; index into atlas_time_days_of_week.
+    private static final int EPOCH_DAY_OF_WEEK = 4;
+
+    // Direct-mapped day label cache; must be a power of two.
+    private static final int CACHE_SIZE = 16;
+
+    private static volatile DateLabelFormatter sInstance;
+
+    private final Context mContext;
+    private volatile State mState;
+    private volatile int mGeneration = 0;
+
+    private DateLabelFormatter(Context context) {
+        mContext = context.getApplicationContext();
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        mContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+    }
+
+    public static DateLabelFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (DateLabelFormatter.class) {
+                if (sInstance == null) sInstance = new DateLabelFormatter(context);
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops cached labels and formats.  Called automatically on time, date, time zone, and locale
+     * changes.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            mState = null;
+            mGeneration++;
+        }
+    }
+
+    /**
+     * Returns a counter that changes whenever previously produced labels may be stale, e.g. for
+     * invalidating labels cached elsewhere.
+     */
+    public int getGeneration() {
+        getState();
+        return mGeneration;
+    }
+
+    /**
+     * Returns the local epoch-day of the given time: the number of days since January 1st 1970 in
+     * the current time zone.
+     */
+    public long getEpochDay(long millis) {
+        return getState().getEpochDay(millis);
+    }
+
+    /**
+     * Returns `true` if the two Dates fall on different local days.  `null` Dates never cross a
+     * boundary.
+     */
+    public boolean isDateBoundary(Date d1, Date d2) {
+        if (d1 == null || d2 == null) return false;
+        State state = getState();
+        return state.getEpochDay(d1.getTime()) != state.getEpochDay(d2.getTime());
+    }
+
+    /**
+     * Returns the time of the next local midnight, when relative labels like "Today" expire.
+     */
+    public long getNextMidnight() {
+        return getState().mNextMidnight;
+    }
+
+    /**
+     * Returns Today, Yesterday, the day of the week within one week, or a date if greater.
+     */
+    public String formatDay(long millis) {
+        State state = getState();
+        long day = state.getEpochDay(millis);
+        int slot = (int) (day & (CACHE_SIZE - 1));
+        DayLabel cached = state.mDayLabels.get(slot);
+        if (cached != null && cached.mDay == day) return cached.mLabel;
+
+        long daysAgo = state.mToday - day;
+        String label;
+        if (daysAgo <= 0) {
+            label = mContext.getString(R.string.atlas_time_today);
+        } else if (daysAgo == 1) {
+            label = mContext.getString(R.string.atlas_time_yesterday);
+        } else if (daysAgo <= DAYS_WEEK) {
+            label = getDayOfWeek(day);
+        } else {
+            synchronized (state.mDayOfWeekFormat) {
+                label = state.mDayOfWeekFormat.format(new Date(millis));
+            }
+        }
+        state.mDayLabels.set(slot, new DayLabel(day, label));
+        return label;
+    }
+
+    /**
+     * Returns the time of day, e.g. "4:20 PM", in the user's preferred format.
+     */
+    public String formatTime(long millis) {
+        State state = getState();
+        synchronized (state.mTimeFormat) {
+            return state.mTimeFormat.format(new Date(millis));
+        }
+    }
+
+    private String getDayOfWeek(long epochDay) {
+        int index = (int) (((epochDay + EPOCH_DAY_OF_WEEK) % DAYS_WEEK + DAYS_WEEK) % DAYS_WEEK);
+        return mContext.getResources().getStringArray(R.array.atlas_time_days_of_week)[index];
+    }
+
+    /**
+     * Returns the current State, rebuilding it after invalidation or once midnight has passed.
+     */
+    private State getState() {
+        State state = mState;
+        if (state != null && System.currentTimeMillis() < state.mNextMidnight) return state;
+        synchronized (this) {
+            state = mState;
+            long now = System.currentTimeMillis();
+            if (state != null && now < state.mNextMidnight) return state;
+            if (state != null) mGeneration++;
+            state = new State(mContext, now);
+            mState = state;
+            return state;
+        }
+    }
+
+    /**
+     * Time zone, formats, and labels valid until the next local midnight.
+     */
+    private static final class State {
+        final TimeZone mTimeZone;
+        final long mToday;
+        final long mNextMidnight;
+        final DateFormat mTimeFormat;
+        final SimpleDateFormat mDayOfWeekFormat;
+        final AtomicReferenceArray<DayLabel> mDayLabels = new AtomicReferenceArray<DayLabel>(CACHE_SIZE);
+
+        State(Context context, long now) {
+            mTimeZone = TimeZone.getDefault();
+            mToday = getEpochDay(now);
+            // Offsets may differ across a DST transition; step back to the exact midnight.
+            long midnight = (mToday + 1) * MILLIS_DAY - mTimeZone.getOffset(now);
+            while (getEpochDay(midnight - 1) > mToday) midnight -= 60 * 60 * 1000;
+            mNextMidnight = midnight;
+            mTimeFormat = android.text.format.DateFormat.getTimeFormat(context);
+            mDayOfWeekFormat = new SimpleDateFormat("EEE, LLL dd,", Locale.US);
+        }
+
+        long getEpochDay(long millis) {
+            long local = millis + mTimeZone.getOffset(millis);
+            return (local >= 0) ? local / MILLIS_DAY : (local - MILLIS_DAY + 1) / MILLIS_DAY;
+        }
+    }
+
+    private static final class DayLabel {
+        final long mDay;
+        final String mLabel;
+
+        DayLabel(long day, String label) {
+            mDay = day;
+            mLabel = label;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.layer.atlas.util;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * FlatJsonReader reads a single JSON object of scalar fields straight from UTF-8 bytes, for fixed
+ * MessagePart schemas like image info and locations.  Unlike org.json, it builds no String for
+ * the document and no object tree: names are matched against pre-encoded byte arrays, and numbers
+ * are parsed in place.  Nested objects and arrays are skipped.
+ *
+ * <pre>
+ *   FlatJsonReader reader = new FlatJsonReader(part.getData());
+ *   reader.beginObject();
+ *   while (reader.hasNext()) {
+ *       switch (reader.selectName(NAMES)) {
+ *           case 0: width = reader.nextInt(); break;
+ *           default: reader.skipValue(); break;
+ *       }
+ *   }
+ * </pre>
+ */
+public final class FlatJsonReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Powers of ten that are exact doubles, for the fast number path.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Largest mantissa that converts to a double exactly.
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final byte[] mBytes;
+    private final int mEnd;
+    private int mPos;
+    private boolean mExpectComma;
+
+    public FlatJsonReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public FlatJsonReader(byte[] bytes, int offset, int length) {
+        mBytes = bytes;
+        mPos = offset;
+        mEnd = offset + length;
+    }
+
+    /**
+     * Encodes field names for selectName().
+     */
+    public static byte[][] names(String... names) {
+        byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(UTF_8);
+        }
+        return encoded;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+        mExpectComma = false;
+    }
+
+    /**
+     * Returns `true` if the object has another field, consuming the separating comma.
+     */
+    public boolean hasNext() throws IOException {
+        byte b = peek();
+        if (b == '}') {
+            mPos++;
+            return false;
+        }
+        if (mExpectComma) {
+            expect(',');
+            peek();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next field name and its colon, returning its index in `names` or -1 if it is not
+     * one of them.  Names containing escapes never match.
+     */
+    public int selectName(byte[][] names) throws IOException {
+        expect('"');
+        int start = mPos;
+        int end = skipString();
+        expect(':');
+        mExpectComma = true;
+        int length = end - start;
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = names[i];
+            if (name.length != length) continue;
+            int j = 0;
+            while (j < length && mBytes[start + j] == name[j]) j++;
+            if (j == length) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns `true` and consumes the value if it is JSON null.
+     */
+    public boolean nextNull() throws IOException {
+        if (peek() != 'n') return false;
+        expectLiteral("null");
+        return true;
+    }
+
+    public String nextString() throws IOException {
+        expect('"');
+        int start = mPos;
+        boolean escaped = false;
+        while (true) {
+            if (mPos >= mEnd) throw error("Unterminated string");
+            byte b = mBytes[mPos];
+            if (b == '"') break;
+            if (b == '\\') {
+                escaped = true;
+                mPos++;
+            }
+            mPos++;
+        }
+        int end = mPos++;
+        if (!escaped) return new String(mBytes, start, end - start, UTF_8);
+        return unescape(new String(mBytes, start, end - start, UTF_8));
+    }
+
+    public int nextInt() throws IOException {
+        peek();
+        int start = mPos;
+        boolean negative = consume('-');
+        long value = 0;
+        int digits = 0;
+        while (mPos < mEnd && isDigit(mBytes[mPos]) && digits < 10) {
+            value = value * 10 + (mBytes[mPos++] - '0');
+            digits++;
+        }
+        if (digits == 0) throw error("Expected a number");
+        if (mPos < mEnd && (isDigit(mBytes[mPos]) || mBytes[mPos] == '.' || mBytes[mPos] == 'e' || mBytes[mPos] == 'E')) {
+            // Fractions and exponents truncate toward zero, like org.json's getInt().
+            mPos = start;
+            return (int) nextDouble();
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw error("Integer out of range");
+        return (int) value;
+    }
+
+    public double nextDouble() throws IOException {
+        peek();
+        int start = mPos;
+        boolean negative = consume('-');
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        int digits = 0;
+        while (mPos < mEnd && isDigit(mBytes[mPos])) {
+            mantissa = accumulate(mantissa, mBytes[mPos++], significant);
+            if (mantissa >= 0) significant++;
+            digits++;
+        }
+        if (consume('.')) {
+            while (mPos < mEnd && isDigit(mBytes[mPos])) {
+                mantissa = accumulate(mantissa, mBytes[mPos++], significant);
+                if (mantissa >= 0) significant++;
+                exponent--;
+                digits++;
+            }
+        }
+        if (digits == 0) throw error("Expected a number");
+        if (mPos < mEnd && (mBytes[mPos] == 'e' || mBytes[mPos] == 'E')) {
+            mPos++;
+            boolean negativeExponent = consume('-');
+            if (!negativeExponent) consume('+');
+            int e = 0;
+            int exponentDigits = 0;
+            while (mPos < mEnd && isDigit(mBytes[mPos])) {
+                if (e < 10000) e = e * 10 + (mBytes[mPos] - '0');
+                mPos++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) throw error("Expected an exponent");
+            exponent += negativeExponent ? -e : e;
+        }
+
+        // Both operands are exact, so a single multiply or divide rounds correctly.
+        if (mantissa >= 0 && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(mBytes, start, mPos - start, UTF_8));
+        } catch (NumberFormatException e) {
+            throw error("Malformed number");
+        }
+    }
+
+    /**
+     * Skips the next value, including nested objects and arrays.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            byte b = peek();
+            switch (b) {
+                case '{':
+                case '[':
+                    depth++;
+                    mPos++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    mPos++;
+                    break;
+                case '"':
+                    mPos++;
+                    skipString();
+                    break;
+                case ',':
+                case ':':
+                    if (depth == 0) throw error("Expected a value");
+                    mPos++;
+                    break;
+                default:
+                    // Number or literal
+                    while (mPos < mEnd && !isDelimiter(mBytes[mPos])) mPos++;
+                    break;
+            }
+        } while (depth > 0);
+        if (depth < 0) throw error("Unbalanced value");
+    }
+
+    //==============================================================================================
+    // Internals
+    //==============================================================================================
+
+    /**
+     * Returns the mantissa with another digit, or -1 once it no longer fits exactly.
+     */
+    private static long accumulate(long mantissa, byte digit, int significant) {
+        if (mantissa < 0 || significant >= 18) return -1;
+        return mantissa * 10 + (digit - '0');
+    }
+
+    /**
+     * Skips to the closing quote of a string whose opening quote was consumed, returning the
+     * position of the closing quote.
+     */
+    private int skipString() throws IOException {
+        while (mPos < mEnd) {
+            byte b = mBytes[mPos];
+            if (b == '"') return mPos++;
+            mPos += (b == '\\') ? 2 : 1;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String unescape(String raw) throws IOException {
+        StringBuilder builder = new StringBuilder(raw.length());
+        for (int i = 0, length = raw.length(); i < length; i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (++i >= length) throw error("Unterminated escape");
+            char e = raw.charAt(i);
+            switch (e) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= length) throw error("Unterminated escape");
+                    try {
+                        builder.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Malformed escape");
+                    }
+                    i += 4;
+                    break;
+                default:
+                    builder.append(e);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private byte peek() throws IOException {
+        while (mPos < mEnd) {
+            byte b = mBytes[mPos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return b;
+            mPos++;
+        }
+        throw error("Unexpected end of input");
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c) throw error("Expected '" + c + "'");
+        mPos++;
+    }
+
+    private boolean consume(char c) {
+        if (mPos < mEnd && mBytes[mPos] == c) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 0, length = literal.length(); i < length; i++) {
+            if (mPos >= mEnd || mBytes[mPos] != literal.charAt(i)) throw error("Expected " + literal);
+            mPos++;
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ':' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + mPos);
+    }
+}
@@ -0,0 +1,53 @@
+package com.layer.atlas.util;
+
+/**
+ * ImageSizing holds the image dimension arithmetic used when sending and displaying images.  It
+ * has no Android dependencies.
+ */
+public final class ImageSizing {
+    private ImageSizing() {
+    }
+
+    /**
+     * Returns int[] {scaledWidth, scaledHeight} for dimensions that fit within the given maxWidth,
+     * maxHeight at the given inWidth, inHeight aspect ratio.  If the in dimensions fit fully inside
+     * the max dimensions, no scaling is applied.  Otherwise, at least one scaled dimension is set
+     * to a max dimension, and the other scaled dimension is scaled to fit.
+     */
+    public static int[] scaleDownInside(int inWidth, int inHeight, int maxWidth, int maxHeight) {
+        int scaledWidth;
+        int scaledHeight;
+        if (inWidth <= maxWidth && inHeight <= maxHeight) {
+            scaledWidth = inWidth;
+            scaledHeight = inHeight;
+        } else {
+            double widthRatio = (double) inWidth / (double) maxWidth;
+            double heightRatio = (double) inHeight / (double) maxHeight;
+            if (widthRatio > heightRatio) {
+                scaledWidth = maxWidth;
+                scaledHeight = (int) Math.round((double) inHeight / widthRatio);
+            } else {
+                scaledHeight = maxHeight;
+                scaledWidth = (int) Math.round((double) inWidth / heightRatio);
+            }
+        }
+        return new int[]{scaledWidth, scaledHeight};
+    }
+
+    /**
+     * Returns the largest power-of-two BitmapFactory sample size that decodes an image of the given
+     * dimensions no smaller than the target dimensions, so it can be scaled down to them.
+     */
+    public static int getSampleSize(int inWidth, int inHeight, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        int sampleWidth = inWidth;
+        int sampleHeight = inHeight;
+        while (sampleWidth > targetWidth && sampleHeight > targetHeight) {
+            sampleWidth >>= 1;
+            sampleHeight >>= 1;
+            sampleSize <<= 1;
+        }
+        // Back off 1 for scale-down instead of scale-up
+        return sampleSize == 1 ? 1 : sampleSize >> 1;
+    }
+}
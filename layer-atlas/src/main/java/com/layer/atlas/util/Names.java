@@ -0,0 +1,29 @@
+package com.layer.atlas.util;
+
+/**
+ * Names holds participant name formatting that has no Android dependencies.
+ */
+public final class Names {
+    private Names() {
+    }
+
+    /**
+     * Returns up to two upper-case initials for the given full name.
+     */
+    public static String getInitials(String fullName) {
+        if (fullName.contains(" ")) {
+            String[] names = fullName.split(" ");
+            int count = 0;
+            StringBuilder b = new StringBuilder();
+            for (String name : names) {
+                String t = name.trim();
+                if (t.isEmpty()) continue;
+                b.append(("" + t.charAt(0)).toUpperCase());
+                if (++count >= 2) break;
+            }
+            return b.toString();
+        } else {
+            return ("" + fullName.trim().charAt(0)).toUpperCase();
+        }
+    }
+}
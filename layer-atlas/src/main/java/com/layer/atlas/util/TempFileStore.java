@@ -0,0 +1,263 @@
+package com.layer.atlas.util;
+
+import android.content.Context;
+import android.os.Process;
+
+import com.layer.sdk.messaging.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * TempFileStore hands out temporary files for building Messages, such as copies of picked
+ * images, from a dedicated directory under the cache directory.  The directory is kept under a
+ * byte quota by deleting the least recently modified idle files, files bound to a Message are
+ * deleted once the Message is released after sending, and files left over by earlier processes
+ * are swept in the background on first use.
+ */
+public final class TempFileStore {
+    public static final long DEFAULT_QUOTA_BYTES = 32 * 1024 * 1024;
+
+    private static final String DIRECTORY = "atlas-temp";
+
+    // In-use files not bound to a Message and untouched this long are assumed abandoned.
+    private static final long STALE_MILLIS = 10 * 60 * 1000;
+
+    // Temp files written to the cache root by earlier versions.
+    private static final String[] LEGACY_PREFIXES = {"ThreePartImageUtils.", "KTThreePartImageUtils."};
+
+    private static TempFileStore sInstance;
+
+    private final File mDirectory;
+    private final File mLegacyDirectory;
+    private volatile long mQuotaBytes = DEFAULT_QUOTA_BYTES;
+    private long mNextId = System.currentTimeMillis();
+
+    // Files handed out by this process and not yet released.
+    private final Set<File> mInUse = new HashSet<File>();
+    private final Map<Message, List<File>> mMessageFiles = new WeakHashMap<Message, List<File>>();
+
+    // Statistics
+    private long mEvictedCount = 0;
+    private long mSweptCount = 0;
+
+    private TempFileStore(Context context) {
+        mLegacyDirectory = context.getCacheDir();
+        mDirectory = new File(mLegacyDirectory, DIRECTORY);
+    }
+
+    public static synchronized TempFileStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TempFileStore(context.getApplicationContext());
+            sInstance.sweepInBackground();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets the byte quota for idle temp files.  Files in use are never evicted, so the directory
+     * may exceed the quota while large Messages are being sent.
+     *
+     * @param quotaBytes Quota in bytes.
+     * @return This TempFileStore.
+     */
+    public TempFileStore setQuota(long quotaBytes) {
+        if (quotaBytes < 0) throw new IllegalArgumentException("Quota must not be negative");
+        mQuotaBytes = quotaBytes;
+        return this;
+    }
+
+    public long getQuota() {
+        return mQuotaBytes;
+    }
+
+    /**
+     * Returns a new, empty temp file, first evicting idle files over the quota.  The file stays in
+     * use until released.
+     *
+     * @param suffix File name suffix, e.g. ".jpg".
+     * @return The new File.
+     * @throws IOException if the file cannot be created.
+     */
+    public File newFile(String suffix) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+        synchronized (this) {
+            trim();
+            File file;
+            do {
+                file = new File(mDirectory, Long.toString(mNextId++, 36) + suffix);
+            } while (!file.createNewFile());
+            mInUse.add(file);
+            return file;
+        }
+    }
+
+    /**
+     * Returns `true` if the given file was handed out by newFile() and is still in use.
+     */
+    public synchronized boolean isInUse(File file) {
+        return mInUse.contains(file);
+    }
+
+    /**
+     * Deletes the given temp file once the given Message, built from it, has been released.
+     *
+     * @param file    Temp file from newFile().
+     * @param message Message reading the file.
+     * @see #release(Message)
+     */
+    public synchronized void bind(File file, Message message) {
+        List<File> files = mMessageFiles.get(message);
+        if (files == null) {
+            files = new ArrayList<File>(1);
+            mMessageFiles.put(message, files);
+        }
+        files.add(file);
+    }
+
+    /**
+     * Deletes temp files bound to the given Message.  Call once the Message has been sent, and its
+     * MessageParts persisted, or abandoned.
+     *
+     * @param message Message to release temp files for.
+     */
+    public synchronized void release(Message message) {
+        List<File> files = mMessageFiles.remove(message);
+        if (files == null) return;
+        for (File file : files) {
+            release(file);
+        }
+    }
+
+    /**
+     * Deletes the given temp file.
+     *
+     * @param file Temp file from newFile().
+     */
+    public synchronized void release(File file) {
+        mInUse.remove(file);
+        if (!file.delete() && file.exists() && Log.isLoggable(Log.WARN)) {
+            Log.w("Could not delete temp file " + file);
+        }
+    }
+
+    /**
+     * Returns the number of idle files evicted to stay within the quota.
+     */
+    public synchronized long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    /**
+     * Returns the number of files left by earlier processes and deleted on startup.
+     */
+    public synchronized long getSweptCount() {
+        return mSweptCount;
+    }
+
+    /**
+     * Deletes least recently modified idle files until the directory fits within the quota.
+     * Files whose Messages were garbage collected without being released are idle too.
+     */
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        pruneMessageFiles();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= mQuotaBytes) return;
+
+        Arrays.sort(files, OLDEST_FIRST);
+        for (File file : files) {
+            if (total <= mQuotaBytes) break;
+            if (mInUse.contains(file)) continue;
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                mEvictedCount++;
+            }
+        }
+    }
+
+    /**
+     * Marks files bound to collected Messages as idle.
+     */
+    private void pruneMessageFiles() {
+        Set<File> bound = new HashSet<File>();
+        for (List<File> files : mMessageFiles.values()) {
+            bound.addAll(files);
+        }
+        // Unbound in-use files are still being written into a Message.
+        Set<File> stale = new HashSet<File>(mInUse);
+        stale.removeAll(bound);
+        for (File file : stale) {
+            if (System.currentTimeMillis() - file.lastModified() > STALE_MILLIS) mInUse.remove(file);
+        }
+    }
+
+    private void sweepInBackground() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                sweep();
+            }
+        }, "AtlasTempSweep");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Deletes files left by earlier processes, including legacy temp files in the cache root.
+     */
+    private void sweep() {
+        List<File> orphans = new ArrayList<File>();
+        File[] files = mDirectory.listFiles();
+        if (files != null) Collections.addAll(orphans, files);
+        File[] legacy = mLegacyDirectory.listFiles();
+        if (legacy != null) {
+            for (File file : legacy) {
+                for (String prefix : LEGACY_PREFIXES) {
+                    if (file.getName().startsWith(prefix)) {
+                        orphans.add(file);
+                        break;
+                    }
+                }
+            }
+        }
+
+        int swept = 0;
+        for (File file : orphans) {
+            synchronized (this) {
+                if (mInUse.contains(file)) continue;
+                if (file.delete()) swept++;
+            }
+        }
+        synchronized (this) {
+            mSweptCount += swept;
+        }
+        if (swept > 0 && Log.isLoggable(Log.VERBOSE)) Log.v("Swept " + swept + " orphaned temp files");
+    }
+
+    private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(File lhs, File rhs) {
+            long l = lhs.lastModified();
+            long r = rhs.lastModified();
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+}
@@ -0,0 +1,80 @@
+package com.layer.atlas.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Utf8StreamDecoder decodes UTF-8 text from an InputStream without first copying the whole
+ * stream into a byte array, optionally stopping after a number of characters.  Decoding a capped
+ * preview of a large MessagePart reads only as many bytes as the preview needs.
+ */
+public final class Utf8StreamDecoder {
+    /**
+     * Character cap meaning "decode everything".
+     */
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_CHARS = 4096;
+
+    private final String mText;
+    private final boolean mTruncated;
+
+    private Utf8StreamDecoder(String text, boolean truncated) {
+        mText = text;
+        mTruncated = truncated;
+    }
+
+    /**
+     * Decodes up to `maxChars` characters from `in`, then closes it.  A surrogate pair is never
+     * split at the cap.
+     *
+     * @param in       Stream of UTF-8 bytes.
+     * @param maxChars Maximum number of characters to decode, or NO_LIMIT.
+     * @return The decoded text, and whether it was truncated at `maxChars`.
+     * @throws IOException if reading fails.
+     */
+    public static Utf8StreamDecoder decode(InputStream in, int maxChars) throws IOException {
+        Reader reader = new InputStreamReader(in, UTF_8);
+        try {
+            StringBuilder builder = new StringBuilder(Math.min(maxChars, BUFFER_CHARS));
+            char[] buffer = new char[Math.min(BUFFER_CHARS, maxChars == NO_LIMIT ? BUFFER_CHARS : maxChars + 1)];
+            boolean truncated = false;
+            int read;
+            while ((read = reader.read(buffer, 0, buffer.length)) != -1) {
+                int remaining = maxChars - builder.length();
+                if (read > remaining) {
+                    builder.append(buffer, 0, remaining);
+                    truncated = true;
+                    break;
+                }
+                builder.append(buffer, 0, read);
+            }
+            int length = builder.length();
+            if (truncated && length > 0 && Character.isHighSurrogate(builder.charAt(length - 1))) {
+                builder.setLength(length - 1);
+            }
+            return new Utf8StreamDecoder(builder.toString(), truncated);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing to recover.
+            }
+        }
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * Returns `true` if the stream held more than the decoded characters.
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+}
@@ -22,11 +22,7 @@ import android.net.Uri;
 
 import com.layer.atlas.BuildConfig;
 import com.layer.atlas.R;
-import com.layer.atlas.messagetypes.generic.GenericCellFactory;
-import com.layer.atlas.messagetypes.location.LocationCellFactory;
-import com.layer.atlas.messagetypes.singlepartimage.SinglePartImageCellFactory;
-import com.layer.atlas.messagetypes.text.TextCellFactory;
-import com.layer.atlas.messagetypes.threepartimage.ThreePartImageCellFactory;
+import com.layer.atlas.messagetypes.MessagePreviewRegistry;
 import com.layer.atlas.provider.Participant;
 import com.layer.atlas.provider.ParticipantProvider;
 import com.layer.sdk.LayerClient;
@@ -42,18 +38,13 @@ import com.layer.sdk.messaging.MessagePart;
 import com.layer.sdk.query.Queryable;
 
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.Locale;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Util {
     private static final String METADATA_KEY_CONVERSATION_TITLE = "conversationName";
-    private static final int TIME_HOURS_24 = 24 * 60 * 60 * 1000;
-    private static final SimpleDateFormat DAY_OF_WEEK = new SimpleDateFormat("EEE, LLL dd,", Locale.US);
 
     /**
      * Returns the app version name.
@@ -74,21 +65,13 @@ public class Util {
         manager.setPrimaryClip(clipData);
     }
 
-    // TODO: base this on registered types
+    /**
+     * Returns the Conversation list preview for the given Message.
+     *
+     * @see MessagePreviewRegistry
+     */
     public static String getLastMessageString(Context context, Message message) {
-        if (TextCellFactory.isType(message)) {
-            return TextCellFactory.getMessagePreview(context, message);
-        }
-        if (ThreePartImageCellFactory.isType(message)) {
-            return ThreePartImageCellFactory.getMessagePreview(context, message);
-        }
-        if (LocationCellFactory.isType(message)) {
-            return LocationCellFactory.getMessagePreview(context, message);
-        }
-        if (SinglePartImageCellFactory.isType(message)) {
-            return SinglePartImageCellFactory.getMessagePreview(context, message);
-        }
-        return GenericCellFactory.getPreview(context, message);
+        return MessagePreviewRegistry.getInstance().getPreview(context, message);
     }
 
     public static String getConversationTitle(LayerClient client, ParticipantProvider provider, Conversation conversation) {
@@ -127,73 +110,30 @@ public class Util {
     }
 
     public static String getInitials(String fullName) {
-        if (fullName.contains(" ")) {
-            String[] names = fullName.split(" ");
-            int count = 0;
-            StringBuilder b = new StringBuilder();
-            for (String name : names) {
-                String t = name.trim();
-                if (t.isEmpty()) continue;
-                b.append(("" + t.charAt(0)).toUpperCase());
-                if (++count >= 2) break;
-            }
-            return b.toString();
-        } else {
-            return ("" + fullName.trim().charAt(0)).toUpperCase();
-        }
+        return Names.getInitials(fullName);
     }
 
+    /**
+     * Returns the time for today, Yesterday, the day of the week within one week, or a date if
+     * greater.
+     */
     public static String formatTime(Context context, Date date, DateFormat timeFormat, DateFormat dateFormat) {
-        Calendar cal = Calendar.getInstance();
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        long todayMidnight = cal.getTimeInMillis();
-        long yesterMidnight = todayMidnight - TIME_HOURS_24;
-        long weekAgoMidnight = todayMidnight - TIME_HOURS_24 * 7;
-
-        String timeText;
-        if (date.getTime() > todayMidnight) {
-            timeText = timeFormat.format(date.getTime());
-        } else if (date.getTime() > yesterMidnight) {
-            timeText = context.getString(R.string.atlas_time_yesterday);
-        } else if (date.getTime() > weekAgoMidnight) {
-            cal.setTime(date);
-            timeText = context.getResources().getStringArray(R.array.atlas_time_days_of_week)[cal.get(Calendar.DAY_OF_WEEK) - 1];
-        } else {
-            timeText = dateFormat.format(date);
+        DateLabelFormatter labels = DateLabelFormatter.getInstance(context);
+        long daysAgo = labels.getEpochDay(System.currentTimeMillis()) - labels.getEpochDay(date.getTime());
+        if (daysAgo > 0 && daysAgo <= 7) return labels.formatDay(date.getTime());
+        DateFormat format = (daysAgo <= 0) ? timeFormat : dateFormat;
+        synchronized (format) {
+            return format.format(date);
         }
-        return timeText;
     }
 
     /**
      * Returns Today, Yesterday, the day of the week within one week, or a date if greater.
      *
-     * @param context
-     * @param date
-     * @return
+     * @see DateLabelFormatter#formatDay(long)
      */
     public static String formatTimeDay(Context context, Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        long todayMidnight = cal.getTimeInMillis();
-        long yesterdayMidnight = todayMidnight - TIME_HOURS_24;
-        long weekAgoMidnight = todayMidnight - TIME_HOURS_24 * 7;
-
-        String timeBarDayText;
-        if (date.getTime() > todayMidnight) {
-            timeBarDayText = context.getString(R.string.atlas_time_today);
-        } else if (date.getTime() > yesterdayMidnight) {
-            timeBarDayText = context.getString(R.string.atlas_time_yesterday);
-        } else if (date.getTime() > weekAgoMidnight) {
-            cal.setTime(date);
-            timeBarDayText = context.getResources().getStringArray(R.array.atlas_time_days_of_week)[cal.get(Calendar.DAY_OF_WEEK) - 1];
-        } else {
-            timeBarDayText = DAY_OF_WEEK.format(date);
-        }
-        return timeBarDayText;
+        return DateLabelFormatter.getInstance(context).formatDay(date.getTime());
     }
 
     /**
@@ -209,23 +149,7 @@ public class Util {
      * @return
      */
     public static int[] scaleDownInside(int inWidth, int inHeight, int maxWidth, int maxHeight) {
-        int scaledWidth;
-        int scaledHeight;
-        if (inWidth <= maxWidth && inHeight <= maxHeight) {
-            scaledWidth = inWidth;
-            scaledHeight = inHeight;
-        } else {
-            double widthRatio = (double) inWidth / (double) maxWidth;
-            double heightRatio = (double) inHeight / (double) maxHeight;
-            if (widthRatio > heightRatio) {
-                scaledWidth = maxWidth;
-                scaledHeight = (int) Math.round((double) inHeight / widthRatio);
-            } else {
-                scaledHeight = maxHeight;
-                scaledWidth = (int) Math.round((double) inWidth / heightRatio);
-            }
-        }
-        return new int[]{scaledWidth, scaledHeight};
+        return ImageSizing.scaleDownInside(inWidth, inHeight, maxWidth, maxHeight);
     }
 
     /**
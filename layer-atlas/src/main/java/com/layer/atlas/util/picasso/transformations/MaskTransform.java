@@ -0,0 +1,128 @@
+package com.layer.atlas.util.picasso.transformations;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.squareup.picasso.Transformation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MaskTransform clips Bitmaps to a shape.  Picasso requires a Transformation to either return its
+ * input or recycle it, and owns whatever it returns, so transformed Bitmaps never come back free
+ * for reuse.  Instead, mutable ARGB_8888 inputs - which Picasso produces whenever it resizes - are
+ * reused as the output and masked in place.  Other inputs are drawn into one new Bitmap.  Canvas,
+ * Paint, and Path objects are reused per thread.
+ */
+public abstract class MaskTransform implements Transformation {
+    private static final Paint CLEAR_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    static {
+        CLEAR_PAINT.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    private static final ThreadLocal<DrawState> sDrawState = new ThreadLocal<DrawState>() {
+        @Override
+        protected DrawState initialValue() {
+            return new DrawState();
+        }
+    };
+
+    // Statistics
+    private static final AtomicLong sReuseCount = new AtomicLong();
+    private static final AtomicLong sAllocationCount = new AtomicLong();
+    private static final AtomicLong sAllocatedBytes = new AtomicLong();
+
+    @Override
+    public final Bitmap transform(Bitmap source) {
+        if (source == null || !isMasking()) return source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        DrawState state = sDrawState.get();
+        Path path = state.mPath;
+        path.reset();
+        addShape(path, state.mRect, width, height);
+
+        if (source.isMutable() && source.getConfig() == Bitmap.Config.ARGB_8888) {
+            // Clear everything outside the shape, keeping the input as the output.  Resized JPEGs
+            // inherit hasAlpha() == false, which would render the cleared pixels as opaque black.
+            source.setHasAlpha(true);
+            path.setFillType(Path.FillType.INVERSE_WINDING);
+            state.mCanvas.setBitmap(source);
+            state.mCanvas.drawPath(path, CLEAR_PAINT);
+            state.mCanvas.setBitmap(null);
+            sReuseCount.incrementAndGet();
+            return source;
+        }
+
+        path.setFillType(Path.FillType.WINDING);
+        Bitmap out = Bitmap.createBitmap(width, height, getOutputConfig(source));
+        Paint paint = state.mShaderPaint;
+        paint.setShader(new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+        state.mCanvas.setBitmap(out);
+        state.mCanvas.drawPath(path, paint);
+        state.mCanvas.setBitmap(null);
+        paint.setShader(null);
+        source.recycle();
+        sAllocationCount.incrementAndGet();
+        sAllocatedBytes.addAndGet(out.getRowBytes() * out.getHeight());
+        return out;
+    }
+
+    /**
+     * Returns `false` if this transform leaves Bitmaps untouched.
+     */
+    protected boolean isMasking() {
+        return true;
+    }
+
+    /**
+     * Adds the shape to keep to `path`.
+     *
+     * @param path   Empty Path to add the shape to.
+     * @param rect   Scratch RectF.
+     * @param width  Bitmap width.
+     * @param height Bitmap height.
+     */
+    protected abstract void addShape(Path path, RectF rect, int width, int height);
+
+    /**
+     * Returns the Config for Bitmaps allocated for inputs that cannot be masked in place.
+     */
+    protected abstract Bitmap.Config getOutputConfig(Bitmap source);
+
+    /**
+     * Returns the number of inputs masked in place and returned without allocating.
+     */
+    public static long getReuseCount() {
+        return sReuseCount.get();
+    }
+
+    /**
+     * Returns the number of output Bitmaps allocated for inputs that could not be reused.
+     */
+    public static long getAllocationCount() {
+        return sAllocationCount.get();
+    }
+
+    /**
+     * Returns the total size of allocated output Bitmaps in bytes.
+     */
+    public static long getAllocatedBytes() {
+        return sAllocatedBytes.get();
+    }
+
+    private static class DrawState {
+        final Canvas mCanvas = new Canvas();
+        final Path mPath = new Path();
+        final RectF mRect = new RectF();
+        final Paint mShaderPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+    }
+}
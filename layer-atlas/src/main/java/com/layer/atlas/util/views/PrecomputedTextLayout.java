@@ -0,0 +1,88 @@
+package com.layer.atlas.util.views;
+
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+/**
+ * PrecomputedTextLayout holds a line-broken StaticLayout along with the bounds of its widest line,
+ * so a TextLayoutView can size itself and draw without measuring text.  Building one does all of
+ * the text measurement and line breaking, and may happen on any thread as long as the TextPaint
+ * is not modified concurrently.
+ *
+ * @see TextLayoutView
+ */
+public final class PrecomputedTextLayout {
+    private final Layout mLayout;
+    private final TextPaint mPaintKey;
+    private final int mMaxWidth;
+    private final int mLeft;
+    private final int mWidth;
+
+    private PrecomputedTextLayout(Layout layout, TextPaint paintKey, int maxWidth, int left, int width) {
+        mLayout = layout;
+        mPaintKey = paintKey;
+        mMaxWidth = maxWidth;
+        mLeft = left;
+        mWidth = width;
+    }
+
+    /**
+     * Builds a layout for `text` with a copy of `paint`, breaking lines at `maxWidth`.
+     *
+     * @param text     Text to lay out, optionally with spans.
+     * @param paint    TextPaint to measure and draw with; also identifies the layout in matches().
+     * @param maxWidth Maximum line width in pixels.
+     * @return The PrecomputedTextLayout.
+     */
+    public static PrecomputedTextLayout build(CharSequence text, TextPaint paint, int maxWidth) {
+        // Copy the paint so drawing never shares a Paint with a background layout pass.
+        Layout layout = new StaticLayout(text, new TextPaint(paint), Math.max(0, maxWidth), Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+        float left = Float.MAX_VALUE;
+        float right = 0;
+        for (int i = 0, lines = layout.getLineCount(); i < lines; i++) {
+            left = Math.min(left, layout.getLineLeft(i));
+            right = Math.max(right, layout.getLineRight(i));
+        }
+        if (left > right) left = right = 0;
+        int l = (int) Math.floor(left);
+        return new PrecomputedTextLayout(layout, paint, maxWidth, l, (int) Math.ceil(right) - l);
+    }
+
+    /**
+     * Returns `true` if this layout was built with the given TextPaint and maximum width.
+     */
+    public boolean matches(TextPaint paint, int maxWidth) {
+        return mPaintKey == paint && mMaxWidth == maxWidth;
+    }
+
+    public Layout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * Returns the offset of the leftmost line start, which is non-zero for right-aligned lines.
+     */
+    public int getLeft() {
+        return mLeft;
+    }
+
+    /**
+     * Returns the width of the widest line, which is the content width of a wrapping view.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mLayout.getHeight();
+    }
+
+    /**
+     * Returns an estimate of the bytes held by line metrics, not counting the text itself.
+     */
+    public int sizeOf() {
+        // StaticLayout keeps a handful of ints and a Directions reference per line.
+        return mLayout.getLineCount() * 6 * (Integer.SIZE / Byte.SIZE);
+    }
+}
@@ -74,6 +74,16 @@ public class SwipeableItem extends FrameLayout {
          */
         public abstract void onSwipe(Tquery item, int direction);
 
+        /**
+         * Disables swiping for rows without an item, such as footers and pending send
+         * placeholders.
+         */
+        @Override
+        public int getSwipeDirs(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
+            if (mAdapter == null || mAdapter.getItem(viewHolder) == null) return 0;
+            return super.getSwipeDirs(recyclerView, viewHolder);
+        }
+
         @Override
         public void onSwiped(RecyclerView.ViewHolder viewHolder, int direction) {
             if (mAdapter == null) return;
@@ -0,0 +1,120 @@
+package com.layer.atlas.util.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.style.ClickableSpan;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * TextLayoutView draws a PrecomputedTextLayout.  Unlike TextView, it does no text measurement,
+ * link detection, or line breaking when bound or measured: it sizes itself to the layout's widest
+ * line plus padding, and draws the layout as-is.  ClickableSpans in the layout's text, such as
+ * those added by Linkify, are clickable.
+ *
+ * @see PrecomputedTextLayout
+ */
+public class TextLayoutView extends View {
+    private PrecomputedTextLayout mTextLayout;
+    private ClickableSpan mPressedSpan;
+
+    public TextLayoutView(Context context) {
+        super(context);
+    }
+
+    public TextLayoutView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public TextLayoutView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    public void setTextLayout(PrecomputedTextLayout textLayout) {
+        if (mTextLayout == textLayout) return;
+        boolean resize = mTextLayout == null || textLayout == null
+                || mTextLayout.getWidth() != textLayout.getWidth()
+                || mTextLayout.getHeight() != textLayout.getHeight();
+        mTextLayout = textLayout;
+        mPressedSpan = null;
+        setContentDescription(textLayout == null ? null : textLayout.getLayout().getText());
+        if (resize) requestLayout();
+        invalidate();
+    }
+
+    public PrecomputedTextLayout getTextLayout() {
+        return mTextLayout;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getPaddingLeft() + getPaddingRight();
+        int height = getPaddingTop() + getPaddingBottom();
+        if (mTextLayout != null) {
+            width += mTextLayout.getWidth();
+            height += mTextLayout.getHeight();
+        }
+        width = Math.max(width, getSuggestedMinimumWidth());
+        height = Math.max(height, getSuggestedMinimumHeight());
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mTextLayout == null) return;
+        int saveCount = canvas.save();
+        canvas.translate(getPaddingLeft() - mTextLayout.getLeft(), getPaddingTop());
+        mTextLayout.getLayout().draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = super.onTouchEvent(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mPressedSpan = getClickableSpan(event);
+                return handled || mPressedSpan != null;
+
+            case MotionEvent.ACTION_UP:
+                ClickableSpan span = mPressedSpan;
+                mPressedSpan = null;
+                if (span != null && span == getClickableSpan(event)) {
+                    span.onClick(this);
+                    return true;
+                }
+                return handled;
+
+            case MotionEvent.ACTION_CANCEL:
+                mPressedSpan = null;
+                return handled;
+
+            default:
+                return handled || mPressedSpan != null;
+        }
+    }
+
+    @Override
+    public boolean performLongClick() {
+        // A long press copies instead of following the link.
+        mPressedSpan = null;
+        return super.performLongClick();
+    }
+
+    private ClickableSpan getClickableSpan(MotionEvent event) {
+        if (mTextLayout == null) return null;
+        Layout layout = mTextLayout.getLayout();
+        if (!(layout.getText() instanceof Spanned)) return null;
+        int x = (int) event.getX() - getPaddingLeft() + mTextLayout.getLeft();
+        int y = (int) event.getY() - getPaddingTop();
+        if (y < 0 || y >= layout.getHeight()) return null;
+        int line = layout.getLineForVertical(y);
+        if (x < layout.getLineLeft(line) || x > layout.getLineRight(line)) return null;
+        int offset = layout.getOffsetForHorizontal(line, x);
+        ClickableSpan[] spans = ((Spanned) layout.getText()).getSpans(offset, offset, ClickableSpan.class);
+        return spans.length == 0 ? null : spans[0];
+    }
+}